@@ -6,10 +6,16 @@ public class Constants {
 	
 	public static final String FIELD_RESULT = "result";
 
+	public static final String FIELD_PARTIAL = "partial";
+
 	public static final String FIELD_REFCOUNT = "refCount";
 
 	public static final String FIELD_DOCUMENT_ID = "id";
 
+	public static final String FIELD_SOURCE_BINDINGS = "$bindings";
+
+	public static final String FIELD_SUGGEST = "$suggest";
+
 	public static final String FIELD_LABEL = "label";
 
 	public static final String FIELD_DESCRIPTION = "description";
@@ -4,21 +4,19 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.store.FSDirectory;
 import org.dbpedia.lookup.config.LookupConfig;
-import org.dbpedia.lookup.config.LookupField;
+import org.dbpedia.lookup.indexer.AnalyzerFactory;
+import org.dbpedia.lookup.indexer.LookupCodec;
 import org.dbpedia.lookup.indexer.LookupIndexer;
-import org.dbpedia.lookup.indexer.NGramAnalyzer;
-import org.dbpedia.lookup.indexer.StringPhraseAnalyzer;
-import org.dbpedia.lookup.indexer.UriAnalyzer;
 import org.dbpedia.lookup.searcher.LookupSearcher;
 import org.dbpedia.lookup.server.LookupIndexerServlet;
 import org.dbpedia.lookup.server.LookupSearcherServlet;
+import org.dbpedia.lookup.server.LookupSuggestServlet;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.HandlerList;
@@ -36,8 +34,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Run to start a jetty server that hosts the lookup servlet and makes it
@@ -134,9 +130,14 @@ public class Main {
             resourceBasePath = configFile.getParent().toString();
         }
        
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(createAnalyzer(lookupConfig));
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(AnalyzerFactory.createAnalyzer(lookupConfig));
         indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
         indexWriterConfig.setMaxBufferedDocs(lookupConfig.getMaxBufferedDocs());
+        indexWriterConfig.setCodec(new LookupCodec());
+
+        if (lookupConfig.getIndexSortField() != null) {
+            indexWriterConfig.setIndexSort(createIndexSort(lookupConfig.getIndexSortField()));
+        }
 
         String indexPath = lookupConfig.getIndexPath();
         File indexFile = new File(indexPath);
@@ -153,7 +154,7 @@ public class Main {
 
         IndexWriter indexWriter = new IndexWriter(targetDirectory, indexWriterConfig);
         LookupIndexer indexer = new LookupIndexer(logger, lookupConfig, indexWriter);
-        LookupSearcher searcher = new LookupSearcher(lookupConfig);
+        LookupSearcher searcher = new LookupSearcher(lookupConfig, indexWriter);
 
         server = new Server(port);
 
@@ -177,6 +178,10 @@ public class Main {
         ServletHolder searchServletHolder = context.addServlet(LookupSearcherServlet.class, "/api/search/*");
         searchServletHolder.setInitParameter(CONFIG_PATH, configPath);
 
+        // Create a servlet handler and holder for the suggest API and pass the config
+        ServletHolder suggestServletHolder = context.addServlet(LookupSuggestServlet.class, "/api/suggest/*");
+        suggestServletHolder.setInitParameter(CONFIG_PATH, configPath);
+
         // Create a servlet handler and holder for the API and pass the config
         ServletHolder indexServletHolder = context.addServlet(LookupIndexerServlet.class, "/api/index/*");
         indexServletHolder.setInitParameter(CONFIG_PATH, configPath);
@@ -257,32 +262,16 @@ public class Main {
 
     }   */
 
-    private static Analyzer createAnalyzer(LookupConfig config) {
-
-		Map<String, Analyzer> analyzerPerField = new HashMap<String, Analyzer>();
-
-		for (LookupField field : config.getLookupFields()) {
-
-			String fieldType = field.getType();
-
-			if (fieldType == null) {
-				continue;
-			}
-
-			if (fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_STRING)) {
-				analyzerPerField.put(field.getName(), new StringPhraseAnalyzer());
-			}
-
-			if(fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_NGRAM)) {
-				analyzerPerField.put(field.getName(), new NGramAnalyzer());
-			}
-
-			if(fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_URI)) {
-				analyzerPerField.put(field.getName(), new UriAnalyzer());
-			}
-		}
+    /**
+     * Creates the index sort on a numeric field, most popular documents first
+     * 
+     * @param field The numeric field
+     * @return The index sort
+     */
+    private static Sort createIndexSort(String field) {
 
-		Analyzer analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(), analyzerPerField);
-		return analyzer;
-	}
+		SortField sortField = new SortField(field, SortField.Type.LONG, true);
+		sortField.setMissingValue(Long.MIN_VALUE);
+		return new Sort(sortField);
+    }
 }
@@ -0,0 +1,67 @@
+package org.dbpedia.lookup.config;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * Builds unambiguous cache keys from named values. Each value is prefixed with its
+ * length, so values containing separators cannot make two different keys equal
+ */
+public class CacheKeyBuilder {
+
+	private final StringBuilder key = new StringBuilder();
+
+	/**
+	 * Adds a value, null values are distinct from the string "null"
+	 *
+	 * @param name The fixed name of the value
+	 * @param value The value
+	 * @return This builder
+	 */
+	public CacheKeyBuilder add(String name, Object value) {
+
+		key.append(name).append('=');
+
+		if (value == null) {
+			key.append('-');
+		} else {
+			appendLengthPrefixed(String.valueOf(value));
+		}
+
+		key.append(';');
+		return this;
+	}
+
+	/**
+	 * Adds a set of values in sorted order, so the key does not depend on the iteration
+	 * order of the collection
+	 *
+	 * @param name The fixed name of the values
+	 * @param values The values
+	 * @return This builder
+	 */
+	public CacheKeyBuilder addAll(String name, Collection<String> values) {
+
+		if (values == null) {
+			return add(name, null);
+		}
+
+		key.append(name).append('=').append(values.size()).append('[');
+
+		for (String value : new TreeSet<String>(values)) {
+			appendLengthPrefixed(value);
+		}
+
+		key.append("];");
+		return this;
+	}
+
+	private void appendLengthPrefixed(String value) {
+		key.append(value.length()).append(':').append(value);
+	}
+
+	@Override
+	public String toString() {
+		return key.toString();
+	}
+}
@@ -38,6 +38,10 @@ public class IndexConfig {
 
 	private String sparqlEndpoint;
 
+	private int indexWorkers;
+
+	private int indexQueueSize;
+
 	public String getTdbPath() {
 		return tdbPath;
 	}
@@ -102,6 +106,22 @@ public class IndexConfig {
 		this.sparqlEndpoint = sparqlEndpoint;
 	}
 
+	public int getIndexWorkers() {
+		return indexWorkers;
+	}
+
+	public void setIndexWorkers(int indexWorkers) {
+		this.indexWorkers = indexWorkers;
+	}
+
+	public int getIndexQueueSize() {
+		return indexQueueSize;
+	}
+
+	public void setIndexQueueSize(int indexQueueSize) {
+		this.indexQueueSize = indexQueueSize;
+	}
+
 	/**
 	 * Loads the XML Configuration from file
 	 * 
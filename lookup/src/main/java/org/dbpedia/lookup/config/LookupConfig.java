@@ -68,6 +68,74 @@ public class LookupConfig {
 	}
 
 	private int maxResultsCap;
+
+	private boolean nearRealTime;
+
+	private int nearRealTimeRefreshInterval;
+
+	private int nearRealTimeFlushInterval;
+
+	private int resultCacheSize;
+
+	private boolean coalesceRequests;
+
+	private String[] returnFields;
+
+	private boolean highlightOffsets;
+
+	private int searchThreads;
+
+	private int searchSliceMaxDocs;
+
+	private int searchSliceMaxSegments;
+
+	private int queryTimeout;
+
+	private int fuzzyEditDistanceCap;
+
+	private int maxQueryExpansions;
+
+	private boolean cancelOnDisconnect;
+
+	private String[] suggestFields;
+
+	private String suggestWeightField;
+
+	private RankFeature[] rankFeatures;
+
+	private String indexSortField;
+
+	private boolean earlyTermination;
+
+	private boolean stagedQueries;
+
+	private int rescoreWindow;
+
+	private float rescoreWeight = 1;
+
+	private boolean fuzzyAutoDistance;
+
+	private int fuzzyAutoOneEditLength = 3;
+
+	private int fuzzyAutoTwoEditsLength = 6;
+
+	private int fuzzyMaxExpansions;
+
+	private int fuzzyMinDocFreq;
+
+	private boolean combinedFields;
+
+	private int queryCacheSize;
+
+	private int queryCacheRamMB;
+
+	private int queryCacheMinSegmentDocs;
+
+	private String queryCachePolicy;
+
+	private int stagingMemoryMB;
+
+	private String stagingPath;
 	
 	private float minScore;
 	
@@ -181,6 +249,282 @@ public class LookupConfig {
 		this.maxResultsCap = maxResultsCap;
 	}
 
+	public boolean isNearRealTime() {
+		return nearRealTime;
+	}
+
+	public void setNearRealTime(boolean nearRealTime) {
+		this.nearRealTime = nearRealTime;
+	}
+
+	public int getNearRealTimeRefreshInterval() {
+		return nearRealTimeRefreshInterval;
+	}
+
+	public void setNearRealTimeRefreshInterval(int nearRealTimeRefreshInterval) {
+		this.nearRealTimeRefreshInterval = nearRealTimeRefreshInterval;
+	}
+
+	/**
+	 * @return The minimum time in milliseconds between two flushes of the staged documents
+	 * in near-real-time mode, 0 to only write them on commit
+	 */
+	public int getNearRealTimeFlushInterval() {
+		return nearRealTimeFlushInterval;
+	}
+
+	public void setNearRealTimeFlushInterval(int nearRealTimeFlushInterval) {
+		this.nearRealTimeFlushInterval = nearRealTimeFlushInterval;
+	}
+
+	public int getResultCacheSize() {
+		return resultCacheSize;
+	}
+
+	public void setResultCacheSize(int resultCacheSize) {
+		this.resultCacheSize = resultCacheSize;
+	}
+
+	public boolean isCoalesceRequests() {
+		return coalesceRequests;
+	}
+
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+
+	public String[] getReturnFields() {
+		return returnFields;
+	}
+
+	public void setReturnFields(String[] returnFields) {
+		this.returnFields = returnFields;
+	}
+
+	public boolean isHighlightOffsets() {
+		return highlightOffsets;
+	}
+
+	public void setHighlightOffsets(boolean highlightOffsets) {
+		this.highlightOffsets = highlightOffsets;
+	}
+
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+
+	public void setSearchThreads(int searchThreads) {
+		this.searchThreads = searchThreads;
+	}
+
+	public int getSearchSliceMaxDocs() {
+		return searchSliceMaxDocs;
+	}
+
+	public void setSearchSliceMaxDocs(int searchSliceMaxDocs) {
+		this.searchSliceMaxDocs = searchSliceMaxDocs;
+	}
+
+	public int getSearchSliceMaxSegments() {
+		return searchSliceMaxSegments;
+	}
+
+	public void setSearchSliceMaxSegments(int searchSliceMaxSegments) {
+		this.searchSliceMaxSegments = searchSliceMaxSegments;
+	}
+
+	public int getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	public void setQueryTimeout(int queryTimeout) {
+		this.queryTimeout = queryTimeout;
+	}
+
+	public int getFuzzyEditDistanceCap() {
+		return fuzzyEditDistanceCap;
+	}
+
+	public void setFuzzyEditDistanceCap(int fuzzyEditDistanceCap) {
+		this.fuzzyEditDistanceCap = fuzzyEditDistanceCap;
+	}
+
+	public int getMaxQueryExpansions() {
+		return maxQueryExpansions;
+	}
+
+	public void setMaxQueryExpansions(int maxQueryExpansions) {
+		this.maxQueryExpansions = maxQueryExpansions;
+	}
+
+	public boolean isCancelOnDisconnect() {
+		return cancelOnDisconnect;
+	}
+
+	public void setCancelOnDisconnect(boolean cancelOnDisconnect) {
+		this.cancelOnDisconnect = cancelOnDisconnect;
+	}
+
+	public String[] getSuggestFields() {
+		return suggestFields;
+	}
+
+	public void setSuggestFields(String[] suggestFields) {
+		this.suggestFields = suggestFields;
+	}
+
+	public String getSuggestWeightField() {
+		return suggestWeightField;
+	}
+
+	public void setSuggestWeightField(String suggestWeightField) {
+		this.suggestWeightField = suggestWeightField;
+	}
+
+	public RankFeature[] getRankFeatures() {
+		return rankFeatures;
+	}
+
+	public void setRankFeatures(RankFeature[] rankFeatures) {
+		this.rankFeatures = rankFeatures;
+	}
+
+	public String getIndexSortField() {
+		return indexSortField;
+	}
+
+	public void setIndexSortField(String indexSortField) {
+		this.indexSortField = indexSortField;
+	}
+
+	public boolean isEarlyTermination() {
+		return earlyTermination;
+	}
+
+	public void setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+	}
+
+	public boolean isStagedQueries() {
+		return stagedQueries;
+	}
+
+	public void setStagedQueries(boolean stagedQueries) {
+		this.stagedQueries = stagedQueries;
+	}
+
+	public int getRescoreWindow() {
+		return rescoreWindow;
+	}
+
+	public void setRescoreWindow(int rescoreWindow) {
+		this.rescoreWindow = rescoreWindow;
+	}
+
+	public float getRescoreWeight() {
+		return rescoreWeight;
+	}
+
+	public void setRescoreWeight(float rescoreWeight) {
+		this.rescoreWeight = rescoreWeight;
+	}
+
+	public boolean isFuzzyAutoDistance() {
+		return fuzzyAutoDistance;
+	}
+
+	public void setFuzzyAutoDistance(boolean fuzzyAutoDistance) {
+		this.fuzzyAutoDistance = fuzzyAutoDistance;
+	}
+
+	public int getFuzzyAutoOneEditLength() {
+		return fuzzyAutoOneEditLength;
+	}
+
+	public void setFuzzyAutoOneEditLength(int fuzzyAutoOneEditLength) {
+		this.fuzzyAutoOneEditLength = fuzzyAutoOneEditLength;
+	}
+
+	public int getFuzzyAutoTwoEditsLength() {
+		return fuzzyAutoTwoEditsLength;
+	}
+
+	public void setFuzzyAutoTwoEditsLength(int fuzzyAutoTwoEditsLength) {
+		this.fuzzyAutoTwoEditsLength = fuzzyAutoTwoEditsLength;
+	}
+
+	public int getFuzzyMaxExpansions() {
+		return fuzzyMaxExpansions;
+	}
+
+	public void setFuzzyMaxExpansions(int fuzzyMaxExpansions) {
+		this.fuzzyMaxExpansions = fuzzyMaxExpansions;
+	}
+
+	public int getFuzzyMinDocFreq() {
+		return fuzzyMinDocFreq;
+	}
+
+	public void setFuzzyMinDocFreq(int fuzzyMinDocFreq) {
+		this.fuzzyMinDocFreq = fuzzyMinDocFreq;
+	}
+
+	public boolean isCombinedFields() {
+		return combinedFields;
+	}
+
+	public void setCombinedFields(boolean combinedFields) {
+		this.combinedFields = combinedFields;
+	}
+
+	public int getQueryCacheSize() {
+		return queryCacheSize;
+	}
+
+	public void setQueryCacheSize(int queryCacheSize) {
+		this.queryCacheSize = queryCacheSize;
+	}
+
+	public int getQueryCacheRamMB() {
+		return queryCacheRamMB;
+	}
+
+	public void setQueryCacheRamMB(int queryCacheRamMB) {
+		this.queryCacheRamMB = queryCacheRamMB;
+	}
+
+	public int getQueryCacheMinSegmentDocs() {
+		return queryCacheMinSegmentDocs;
+	}
+
+	public void setQueryCacheMinSegmentDocs(int queryCacheMinSegmentDocs) {
+		this.queryCacheMinSegmentDocs = queryCacheMinSegmentDocs;
+	}
+
+	public String getQueryCachePolicy() {
+		return queryCachePolicy;
+	}
+
+	public void setQueryCachePolicy(String queryCachePolicy) {
+		this.queryCachePolicy = queryCachePolicy;
+	}
+
+	public int getStagingMemoryMB() {
+		return stagingMemoryMB;
+	}
+
+	public void setStagingMemoryMB(int stagingMemoryMB) {
+		this.stagingMemoryMB = stagingMemoryMB;
+	}
+
+	public String getStagingPath() {
+		return stagingPath;
+	}
+
+	public void setStagingPath(String stagingPath) {
+		this.stagingPath = stagingPath;
+	}
+
 	public String getVersion() {
 		return version;
 	}
@@ -223,5 +567,19 @@ public class LookupConfig {
 
 		return null;
     }
-}
 
+    public RankFeature getRankFeature(String fieldName) {
+
+		if (rankFeatures == null) {
+			return null;
+		}
+
+		for (RankFeature feature : rankFeatures) {
+			if (fieldName.equals(feature.getField())) {
+				return feature;
+			}
+		}
+
+		return null;
+    }
+}
@@ -1,6 +1,8 @@
 package org.dbpedia.lookup.config;
 
 public class LookupField {
+
+	private static final String PREFIX_FIELD_SUFFIX = "$prefix";
 		
 	private float weight;
 
@@ -22,6 +24,10 @@ public class LookupField {
 	
 	private boolean allowPartialMatch;
 
+	private int prefixGramLength;
+
+	private boolean filter;
+
 	public boolean tokenize() { return tokenize; }
 
 	public void setTokenize(boolean tokenize) { this.tokenize = tokenize; }
@@ -96,9 +102,31 @@ public class LookupField {
 		copy.aliases = this.aliases;
 		copy.allowPartialMatch = this.allowPartialMatch;
 		copy.type = this.type;
+		copy.prefixGramLength = this.prefixGramLength;
+		copy.filter = this.filter;
 		return copy;
 	}
 
+	/**
+	 * Creates a string representation of all properties of this query field that
+	 * affect the search result
+	 * @return
+	 */
+	public String getCacheKey() {
+		return new CacheKeyBuilder()
+				.add("name", name)
+				.add("type", type)
+				.add("weight", weight)
+				.add("highlight", highlight)
+				.add("exact", isExact)
+				.add("required", isRequired)
+				.add("tokenize", tokenize)
+				.add("allowPartialMatch", allowPartialMatch)
+				.add("prefixGramLength", prefixGramLength)
+				.add("filter", filter)
+				.toString();
+	}
+
 	public LookupField() {
 		this.tokenize = true;
 	}
@@ -119,4 +147,38 @@ public class LookupField {
 		this.allowPartialMatch = allowPartialMatch;
 	}
 
+	/**
+	 * @return The maximum length of the edge n-grams indexed into the prefix sub-field,
+	 * 0 if the field has no prefix sub-field
+	 */
+	public int getPrefixGramLength() {
+		return prefixGramLength;
+	}
+
+	public void setPrefixGramLength(int prefixGramLength) {
+		this.prefixGramLength = prefixGramLength;
+	}
+
+	/**
+	 * @return True if the field restricts the results without contributing to the score
+	 */
+	public boolean isFilter() {
+		return filter;
+	}
+
+	public void setFilter(boolean filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * @return The name of the hidden sub-field holding the edge n-grams of this field
+	 */
+	public String getPrefixFieldName() {
+		return getPrefixFieldName(name);
+	}
+
+	public static String getPrefixFieldName(String fieldName) {
+		return fieldName + PREFIX_FIELD_SUFFIX;
+	}
+
 }
@@ -1,5 +1,9 @@
 package org.dbpedia.lookup.config;
 
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
 import org.dbpedia.lookup.RequestUtils;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -30,6 +34,24 @@ public class QuerySettings {
 
 	public static final String FUZZY_EDIT_DISTANCE = "fuzzyEditDistance";
 
+	public static final String FIELDS = "fields";
+
+	public static final String EARLY_TERMINATION = "earlyTermination";
+
+	public static final String STAGED_QUERIES = "stagedQueries";
+
+	public static final String RESCORE_WINDOW = "rescoreWindow";
+
+	public static final String RESCORE_WEIGHT = "rescoreWeight";
+
+	public static final String FUZZY_AUTO_DISTANCE = "fuzzyAutoDistance";
+
+	public static final String FUZZY_MAX_EXPANSIONS = "fuzzyMaxExpansions";
+
+	public static final String FUZZY_MIN_DOC_FREQ = "fuzzyMinDocFreq";
+
+	public static final String COMBINED_FIELDS = "combinedFields";
+
 	private float exactMatchBoost;
 
 	private float prefixMatchBoost;
@@ -38,6 +60,8 @@ public class QuerySettings {
 
 	private int maxResultsCap;
 
+	private int fuzzyEditDistanceCap;
+
 	private String format;
 
 	private float minScore;
@@ -48,16 +72,53 @@ public class QuerySettings {
 
 	private int fuzzyEditDistance = 1;
 
+	private Set<String> returnFields;
+
+	private boolean earlyTermination;
+
+	private boolean stagedQueries;
+
+	private int rescoreWindow;
+
+	private float rescoreWeight;
+
+	private boolean fuzzyAutoDistance;
+
+	private int fuzzyAutoOneEditLength;
+
+	private int fuzzyAutoTwoEditsLength;
+
+	private int fuzzyMaxExpansions;
+
+	private int maxQueryExpansions;
+
+	private int fuzzyMinDocFreq;
+
+	private boolean combinedFields;
+
 	public QuerySettings(LookupConfig config) {
 		exactMatchBoost = config.getExactMatchBoost();
 		prefixMatchBoost = config.getPrefixMatchBoost();
 		maxResults = config.getMaxResults();
 		maxResultsCap = config.getMaxResultsCap();
+		fuzzyEditDistanceCap = config.getFuzzyEditDistanceCap();
 		format = config.getFormat();
 		minScore = config.getMinScore();
 		fuzzyEditDistance = config.getFuzzyEditDistance();
 		fuzzyMatchBoost = config.getFuzzyMatchBoost();
 		fuzzyPrefixLength = config.getFuzzyPrefixLength();
+		returnFields = createFieldSet(config.getReturnFields());
+		earlyTermination = config.isEarlyTermination();
+		stagedQueries = config.isStagedQueries();
+		rescoreWindow = config.getRescoreWindow();
+		rescoreWeight = config.getRescoreWeight();
+		fuzzyAutoDistance = config.isFuzzyAutoDistance();
+		fuzzyAutoOneEditLength = config.getFuzzyAutoOneEditLength();
+		fuzzyAutoTwoEditsLength = config.getFuzzyAutoTwoEditsLength();
+		maxQueryExpansions = config.getMaxQueryExpansions();
+		fuzzyMaxExpansions = capMaxExpansions(config.getFuzzyMaxExpansions());
+		fuzzyMinDocFreq = config.getFuzzyMinDocFreq();
+		combinedFields = config.isCombinedFields();
 
 		if (format == null || format.equals("")) {
 			format = LookupConfig.CONFIG_FIELD_FORMAT_XML;
@@ -97,6 +158,118 @@ public class QuerySettings {
 		return format;
 	}
 
+	/**
+	 * @return The names of the stored fields to return or null, if all fields are returned
+	 */
+	public Set<String> getReturnFields() {
+		return returnFields;
+	}
+
+	/**
+	 * @return True if the hits are collected in index sort order and each segment stops
+	 * collecting after the first hits
+	 */
+	public boolean isEarlyTermination() {
+		return earlyTermination;
+	}
+
+	/**
+	 * @return True if exact matches are searched first and prefix and fuzzy matches are
+	 * only added while there are not enough hits
+	 */
+	public boolean isStagedQueries() {
+		return stagedQueries;
+	}
+
+	/**
+	 * @return The number of first pass hits that are rescored with the boost formula and
+	 * the proximity bonus, 0 if the whole result set is scored in a single pass
+	 */
+	public int getRescoreWindow() {
+		return rescoreWindow;
+	}
+
+	/**
+	 * @return The weight of the proximity bonus added in the rescoring pass
+	 */
+	public float getRescoreWeight() {
+		return rescoreWeight;
+	}
+
+	/**
+	 * @param token The query token
+	 * @return The edit distance of the fuzzy query for the token, which depends on the token
+	 * length if the automatic edit distance is enabled
+	 */
+	public int getFuzzyEditDistance(String token) {
+
+		if (!fuzzyAutoDistance) {
+			return fuzzyEditDistance;
+		}
+
+		int length = token.codePointCount(0, token.length());
+
+		if (length >= fuzzyAutoTwoEditsLength) {
+			return Math.min(2, fuzzyEditDistance);
+		}
+
+		if (length >= fuzzyAutoOneEditLength) {
+			return Math.min(1, fuzzyEditDistance);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return The maximum number of terms a fuzzy query expands to, 0 for the default
+	 */
+	public int getFuzzyMaxExpansions() {
+		return fuzzyMaxExpansions;
+	}
+
+	/**
+	 * @return The minimum number of documents a fuzzy expansion has to be found in
+	 */
+	public int getFuzzyMinDocFreq() {
+		return fuzzyMinDocFreq;
+	}
+
+	/**
+	 * @return True if exact token matches on text fields queried with the same input are
+	 * scored as one combined field (BM25F)
+	 */
+	public boolean isCombinedFields() {
+		return combinedFields;
+	}
+
+	/**
+	 * Creates a normalized string representation of all settings that affect the
+	 * search result
+	 * 
+	 * @return The cache key
+	 */
+	public String getCacheKey() {
+		return new CacheKeyBuilder()
+				.add("exactMatchBoost", exactMatchBoost)
+				.add("prefixMatchBoost", prefixMatchBoost)
+				.add("maxResults", maxResults)
+				.add("format", format.toUpperCase())
+				.add("minScore", minScore)
+				.add("fuzzyMatchBoost", fuzzyMatchBoost)
+				.add("fuzzyEditDistance", fuzzyEditDistance)
+				.add("fuzzyPrefixLength", fuzzyPrefixLength)
+				.addAll("fields", returnFields)
+				.add("earlyTermination", earlyTermination)
+				.add("stagedQueries", stagedQueries)
+				.add("rescoreWindow", rescoreWindow)
+				.add("rescoreWeight", rescoreWeight)
+				.add("fuzzyAutoDistance", fuzzyAutoDistance)
+				.add("fuzzyMaxExpansions", fuzzyMaxExpansions)
+				.add("fuzzyMinDocFreq", fuzzyMinDocFreq)
+				.add("combinedFields", combinedFields)
+				.toString();
+	}
+
 	public void parse(HttpServletRequest req) {
 
 		exactMatchBoost = RequestUtils.getFloatParameter(req, EXACT_MATCH_BOOST, exactMatchBoost);
@@ -107,11 +280,80 @@ public class QuerySettings {
 			maxResults = Math.min(maxResults, maxResultsCap);
 		}
 
+		maxResults = Math.max(maxResults, 0);
+
 		format = RequestUtils.getStringParameter(req, FORMAT, format);
 		minScore = RequestUtils.getFloatParameter(req, MIN_SCORE, minScore);
 		fuzzyMatchBoost = RequestUtils.getFloatParameter(req, FUZZY_MATCH_BOOST, fuzzyMatchBoost);
 		fuzzyEditDistance = RequestUtils.getIntParameter(req, FUZZY_EDIT_DISTANCE, fuzzyEditDistance);
-		fuzzyPrefixLength = RequestUtils.getIntParameter(req, FUZZY_PREFIX_LENGTH, fuzzyPrefixLength);
+
+		if (fuzzyEditDistanceCap > 0) {
+			fuzzyEditDistance = Math.min(fuzzyEditDistance, fuzzyEditDistanceCap);
+		}
+
+		// Lucene rejects edit distances above the maximum supported distance
+		fuzzyEditDistance = Math.max(0, Math.min(fuzzyEditDistance, LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE));
+
+		fuzzyPrefixLength = Math.max(0, RequestUtils.getIntParameter(req, FUZZY_PREFIX_LENGTH, fuzzyPrefixLength));
+
+		earlyTermination = Boolean.parseBoolean(RequestUtils.getStringParameter(req, EARLY_TERMINATION,
+				Boolean.toString(earlyTermination)));
+
+		stagedQueries = Boolean.parseBoolean(RequestUtils.getStringParameter(req, STAGED_QUERIES,
+				Boolean.toString(stagedQueries)));
+
+		rescoreWindow = Math.max(0, RequestUtils.getIntParameter(req, RESCORE_WINDOW, rescoreWindow));
+
+		rescoreWeight = RequestUtils.getFloatParameter(req, RESCORE_WEIGHT, rescoreWeight);
+
+		fuzzyAutoDistance = Boolean.parseBoolean(RequestUtils.getStringParameter(req, FUZZY_AUTO_DISTANCE,
+				Boolean.toString(fuzzyAutoDistance)));
+
+		fuzzyMaxExpansions = capMaxExpansions(RequestUtils.getIntParameter(req, FUZZY_MAX_EXPANSIONS,
+				fuzzyMaxExpansions));
+
+		fuzzyMinDocFreq = Math.max(0, RequestUtils.getIntParameter(req, FUZZY_MIN_DOC_FREQ, fuzzyMinDocFreq));
+
+		combinedFields = Boolean.parseBoolean(RequestUtils.getStringParameter(req, COMBINED_FIELDS,
+				Boolean.toString(combinedFields)));
+
+		String fields = RequestUtils.getStringParameter(req, FIELDS, null);
+
+		if (fields != null) {
+			returnFields = createFieldSet(fields.split(","));
+		}
+	}
+
+	/**
+	 * Caps the fuzzy expansions by the configured maximum of query expansions
+	 */
+	private int capMaxExpansions(int maxExpansions) {
+
+		maxExpansions = Math.max(0, maxExpansions);
+
+		if (maxQueryExpansions > 0 && (maxExpansions == 0 || maxExpansions > maxQueryExpansions)) {
+			return maxQueryExpansions;
+		}
+
+		return maxExpansions;
+	}
+
+	private Set<String> createFieldSet(String[] fields) {
+
+		if (fields == null) {
+			return null;
+		}
+
+		// Sorted, so the cache key does not depend on the order of the field names
+		TreeSet<String> fieldSet = new TreeSet<String>();
+
+		for (String field : fields) {
+			if (field != null && !field.trim().isEmpty()) {
+				fieldSet.add(field.trim());
+			}
+		}
+
+		return fieldSet.isEmpty() ? null : fieldSet;
 	}
 
 	
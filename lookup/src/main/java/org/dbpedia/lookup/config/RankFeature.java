@@ -0,0 +1,95 @@
+package org.dbpedia.lookup.config;
+
+/**
+ * A numeric field that is indexed as static rank feature and blended into the score
+ * of every search as an additional query clause
+ */
+public class RankFeature {
+
+	public static final String FUNCTION_SATURATION = "saturation";
+
+	public static final String FUNCTION_LOG = "log";
+
+	public static final String FUNCTION_SIGMOID = "sigmoid";
+
+	public static final String FUNCTION_LINEAR = "linear";
+
+	private static final String FEATURE_FIELD_SUFFIX = "$rank";
+
+	private String field;
+
+	private String function;
+
+	private float weight;
+
+	private float pivot;
+
+	private float scalingFactor;
+
+	private float exponent;
+
+	public RankFeature() {
+		this.function = FUNCTION_SATURATION;
+		this.weight = 1;
+		this.scalingFactor = 1;
+		this.exponent = 0.6f;
+	}
+
+	/**
+	 * @return The name of the numeric lookup field holding the feature values
+	 */
+	public String getField() {
+		return field;
+	}
+
+	public void setField(String field) {
+		this.field = field;
+	}
+
+	/**
+	 * @return The name of the hidden field the feature is indexed to
+	 */
+	public String getFeatureFieldName() {
+		return field + FEATURE_FIELD_SUFFIX;
+	}
+
+	public String getFunction() {
+		return function;
+	}
+
+	public void setFunction(String function) {
+		this.function = function;
+	}
+
+	public float getWeight() {
+		return weight;
+	}
+
+	public void setWeight(float weight) {
+		this.weight = weight;
+	}
+
+	public float getPivot() {
+		return pivot;
+	}
+
+	public void setPivot(float pivot) {
+		this.pivot = pivot;
+	}
+
+	public float getScalingFactor() {
+		return scalingFactor;
+	}
+
+	public void setScalingFactor(float scalingFactor) {
+		this.scalingFactor = scalingFactor;
+	}
+
+	public float getExponent() {
+		return exponent;
+	}
+
+	public void setExponent(float exponent) {
+		this.exponent = exponent;
+	}
+}
@@ -0,0 +1,72 @@
+package org.dbpedia.lookup.indexer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.suggest.document.CompletionAnalyzer;
+import org.dbpedia.lookup.Constants;
+import org.dbpedia.lookup.config.LookupConfig;
+import org.dbpedia.lookup.config.LookupField;
+
+/**
+ * Creates the per-field analyzer shared by the indexer and the searcher, so query tokens
+ * are analyzed exactly like the indexed values of the same field
+ */
+public class AnalyzerFactory {
+
+	/**
+	 * Creates the analyzer for the lookup fields of a config. Fields without a special
+	 * type are analyzed with the StandardAnalyzer
+	 *
+	 * @param config The lookup config
+	 * @return The per-field analyzer
+	 */
+	public static Analyzer createAnalyzer(LookupConfig config) {
+
+		Map<String, Analyzer> analyzerPerField = new HashMap<String, Analyzer>();
+
+		for (LookupField field : config.getLookupFields()) {
+
+			if (field.getPrefixGramLength() > 0) {
+				analyzerPerField.put(field.getPrefixFieldName(), new EdgeNGramAnalyzer(field.getPrefixGramLength()));
+			}
+
+			String fieldType = field.getType();
+
+			if (fieldType == null) {
+				continue;
+			}
+
+			if (fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_STRING)) {
+				analyzerPerField.put(field.getName(), new StringPhraseAnalyzer());
+			}
+
+			if (fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_NGRAM)) {
+				analyzerPerField.put(field.getName(), new NGramAnalyzer());
+			}
+
+			if (fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_URI)) {
+				analyzerPerField.put(field.getName(), new UriAnalyzer());
+			}
+		}
+
+		if (config.getSuggestFields() != null && config.getSuggestFields().length > 0) {
+			analyzerPerField.put(Constants.FIELD_SUGGEST, createSuggestAnalyzer());
+		}
+
+		return new PerFieldAnalyzerWrapper(new StandardAnalyzer(), analyzerPerField);
+	}
+
+	/**
+	 * Creates the analyzer of the completion field. Each label is a single lower-cased
+	 * token, so typed prefixes match the beginning of the label
+	 *
+	 * @return The completion analyzer
+	 */
+	public static CompletionAnalyzer createSuggestAnalyzer() {
+		return new CompletionAnalyzer(new StringPhraseAnalyzer());
+	}
+}
@@ -0,0 +1,90 @@
+package org.dbpedia.lookup.indexer;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Finds documents by their id with a seek on the terms of the id field of each segment,
+ * instead of running a term query. The terms enums are reused for all lookups, which is
+ * cheapest when the ids are looked up in sorted order
+ */
+public class DocumentIdLookup {
+
+	private final List<LeafReaderContext> leaves;
+
+	private final TermsEnum[] termsEnums;
+
+	private final boolean empty;
+
+	private PostingsEnum postings;
+
+	/**
+	 * Creates a new lookup
+	 *
+	 * @param reader The index reader, may be null if there is no index yet
+	 * @param idField The id field
+	 * @throws IOException
+	 */
+	public DocumentIdLookup(IndexReader reader, String idField) throws IOException {
+
+		this.empty = reader == null || reader.numDocs() == 0;
+		this.leaves = reader != null ? reader.leaves() : null;
+		this.termsEnums = new TermsEnum[empty ? 0 : leaves.size()];
+
+		for (int i = 0; i < termsEnums.length; i++) {
+			Terms terms = leaves.get(i).reader().terms(idField);
+			termsEnums[i] = terms != null ? terms.iterator() : null;
+		}
+	}
+
+	/**
+	 * @return True if the index has no live documents, so no lookup can succeed
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * Finds the live document with an id
+	 *
+	 * @param documentId The document id
+	 * @return The document number in the index reader, -1 if not found
+	 * @throws IOException
+	 */
+	public int find(String documentId) throws IOException {
+
+		if (empty) {
+			return -1;
+		}
+
+		BytesRef term = new BytesRef(documentId);
+
+		for (int i = 0; i < termsEnums.length; i++) {
+
+			if (termsEnums[i] == null || !termsEnums[i].seekExact(term)) {
+				continue;
+			}
+
+			LeafReaderContext leaf = leaves.get(i);
+			Bits liveDocs = leaf.reader().getLiveDocs();
+			postings = termsEnums[i].postings(postings, PostingsEnum.NONE);
+
+			for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+				if (liveDocs == null || liveDocs.get(doc)) {
+					return leaf.docBase + doc;
+				}
+			}
+		}
+
+		return -1;
+	}
+}
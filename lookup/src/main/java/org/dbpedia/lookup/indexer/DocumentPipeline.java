@@ -0,0 +1,165 @@
+package org.dbpedia.lookup.indexer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Builds and writes the merged documents with several worker threads. The merge thread
+ * passes each document to the bounded queue of one worker, chosen by the hash of the
+ * document id, and blocks while that queue is full. Each worker sees its documents in
+ * merge order and uses its own document consumer, so the consumers do not have to be
+ * thread-safe
+ */
+public class DocumentPipeline implements StagingStore.DocumentConsumer {
+
+	/**
+	 * Creates the document consumer of a worker
+	 */
+	public interface ConsumerFactory {
+		StagingStore.DocumentConsumer create() throws IOException;
+	}
+
+	private static final Task END = new Task(null, null);
+
+	private final List<BlockingQueue<Task>> queues = new ArrayList<BlockingQueue<Task>>();
+
+	private final List<Thread> workers = new ArrayList<Thread>();
+
+	private volatile Throwable failure;
+
+	private boolean finished;
+
+	/**
+	 * Creates and starts the workers
+	 *
+	 * @param workerCount The number of worker threads
+	 * @param queueSize The number of documents each worker queue holds
+	 * @param factory Creates the document consumer of each worker
+	 * @throws IOException
+	 */
+	public DocumentPipeline(int workerCount, int queueSize, ConsumerFactory factory) throws IOException {
+
+		for (int i = 0; i < workerCount; i++) {
+
+			final BlockingQueue<Task> queue = new ArrayBlockingQueue<Task>(queueSize);
+			final StagingStore.DocumentConsumer consumer = factory.create();
+
+			Thread worker = new Thread(() -> work(queue, consumer), "lookup-index-worker-" + i);
+			worker.setDaemon(true);
+
+			queues.add(queue);
+			workers.add(worker);
+		}
+
+		for (Thread worker : workers) {
+			worker.start();
+		}
+	}
+
+	@Override
+	public void accept(String documentId, List<StagingStore.Binding> bindings) throws IOException {
+
+		checkFailure();
+
+		// The merge reuses the binding list for the next document
+		int worker = (documentId.hashCode() & Integer.MAX_VALUE) % queues.size();
+		put(queues.get(worker), new Task(documentId, new ArrayList<StagingStore.Binding>(bindings)));
+	}
+
+	/**
+	 * Waits until the workers have written all queued documents. Further calls only report
+	 * the failure
+	 *
+	 * @throws IOException The first failure of a worker
+	 */
+	@Override
+	public void finish() throws IOException {
+
+		if (finished) {
+			checkFailure();
+			return;
+		}
+
+		finished = true;
+
+		try {
+			for (BlockingQueue<Task> queue : queues) {
+				put(queue, END);
+			}
+
+			for (Thread worker : workers) {
+				worker.join();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the index workers");
+		}
+
+		checkFailure();
+	}
+
+	private void work(BlockingQueue<Task> queue, StagingStore.DocumentConsumer consumer) {
+
+		try {
+			while (true) {
+
+				Task task = queue.take();
+
+				if (task == END) {
+					return;
+				}
+
+				// After a failure, the queue is still drained so the merge thread never blocks
+				if (failure == null) {
+					try {
+						consumer.accept(task.documentId, task.bindings);
+					} catch (Throwable e) {
+						failure = e;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void checkFailure() throws IOException {
+
+		Throwable cause = failure;
+
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+
+		if (cause != null) {
+			throw new IOException("Index worker failed", cause);
+		}
+	}
+
+	private static void put(BlockingQueue<Task> queue, Task task) throws IOException {
+
+		try {
+			queue.put(task);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while queueing a document");
+		}
+	}
+
+	private static class Task {
+
+		private final String documentId;
+
+		private final List<StagingStore.Binding> bindings;
+
+		private Task(String documentId, List<StagingStore.Binding> bindings) {
+			this.documentId = documentId;
+			this.bindings = bindings;
+		}
+	}
+}
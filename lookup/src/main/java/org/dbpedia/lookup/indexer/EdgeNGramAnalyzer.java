@@ -0,0 +1,32 @@
+package org.dbpedia.lookup.indexer;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+
+/**
+ * Analyzer for the prefix sub-fields. Tokenizes like the StandardAnalyzer used at query
+ * time and indexes every prefix of a token up to the maximum gram length
+ */
+public class EdgeNGramAnalyzer extends Analyzer {
+
+	private final int maxGramLength;
+
+	public EdgeNGramAnalyzer(int maxGramLength) {
+		this.maxGramLength = maxGramLength;
+	}
+
+	@SuppressWarnings("resource")
+	@Override
+	protected TokenStreamComponents createComponents(String fieldName) {
+
+		Tokenizer tokenizer = new StandardTokenizer();
+		TokenStream stream = new LowerCaseFilter(tokenizer);
+		stream = new EdgeNGramTokenFilter(stream, 1, maxGramLength, false);
+
+		return new TokenStreamComponents(tokenizer, stream);
+	}
+}
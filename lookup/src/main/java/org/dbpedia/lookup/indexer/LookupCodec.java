@@ -0,0 +1,38 @@
+package org.dbpedia.lookup.indexer;
+
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99PostingsFormat;
+import org.apache.lucene.search.suggest.document.Completion99PostingsFormat;
+import org.dbpedia.lookup.Constants;
+
+/**
+ * The default codec, except for the completion field, which is written with the
+ * completion postings format, and the document id field, which gets a bloom filter
+ * per segment. Most ids looked up while writing the staged documents are not found
+ * in most segments, which the bloom filter answers without seeking the term
+ * dictionary. The codec keeps the name of the default codec, so the index is read
+ * without it. The postings formats are found by their names
+ */
+public class LookupCodec extends Lucene99Codec {
+
+	private final PostingsFormat completionPostingsFormat = new Completion99PostingsFormat();
+
+	private final PostingsFormat documentIdPostingsFormat = new BloomFilteringPostingsFormat(
+			new Lucene99PostingsFormat());
+
+	@Override
+	public PostingsFormat getPostingsFormatForField(String field) {
+
+		if (Constants.FIELD_SUGGEST.equals(field)) {
+			return completionPostingsFormat;
+		}
+
+		if (Constants.FIELD_DOCUMENT_ID.equals(field)) {
+			return documentIdPostingsFormat;
+		}
+
+		return super.getPostingsFormatForField(field);
+	}
+}
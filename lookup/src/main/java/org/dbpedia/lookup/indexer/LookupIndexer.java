@@ -66,6 +66,9 @@ public class LookupIndexer {
 			// Initialize ARQ
 			ARQ.init();
 
+			indexWriter.setIndexWorkers(config.getIndexWorkers());
+			indexWriter.setIndexQueueSize(config.getIndexQueueSize());
+
 			// Switch over the index mode to execute on of the following methods:
 			switch (config.getIndexMode()) {
 				case INDEX_IN_MEMORY:
@@ -2,45 +2,90 @@ package org.dbpedia.lookup.indexer;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FeatureField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.suggest.document.SuggestField;
 import org.apache.lucene.util.BytesRef;
 import org.dbpedia.lookup.Constants;
 import org.dbpedia.lookup.config.IndexField;
 import org.dbpedia.lookup.config.LookupConfig;
 import org.dbpedia.lookup.config.LookupField;
+import org.dbpedia.lookup.config.RankFeature;
 import org.slf4j.Logger;
 
 public class LuceneIndexWriter {
 
+	private static final FieldType TEXT_WITH_OFFSETS_TYPE = new FieldType(TextField.TYPE_STORED);
+
+	static {
+		TEXT_WITH_OFFSETS_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		// Prefix and fuzzy matches are highlighted from term vectors, the postings
+		// offsets only cover plain term matches
+		TEXT_WITH_OFFSETS_TYPE.setStoreTermVectors(true);
+		TEXT_WITH_OFFSETS_TYPE.setStoreTermVectorPositions(true);
+		TEXT_WITH_OFFSETS_TYPE.setStoreTermVectorOffsets(true);
+		TEXT_WITH_OFFSETS_TYPE.freeze();
+	}
+
+	private static final FieldType PREFIX_GRAM_TYPE = new FieldType();
+
+	static {
+		// The prefix sub-fields are only used for constant score term lookups
+		PREFIX_GRAM_TYPE.setIndexOptions(IndexOptions.DOCS);
+		PREFIX_GRAM_TYPE.setTokenized(true);
+		PREFIX_GRAM_TYPE.setOmitNorms(true);
+		PREFIX_GRAM_TYPE.freeze();
+	}
+
+	private static final int DEFAULT_STAGING_MEMORY_MB = 256;
+
+	private static final int DEFAULT_INDEX_QUEUE_SIZE = 1000;
+
+	private static final Set<String> SOURCE_BINDINGS_FIELD_SET = Collections.singleton(Constants.FIELD_SOURCE_BINDINGS);
+
 	private IndexWriter indexWriter;
 
 	private IndexSearcher searcher;
 
 	private Logger logger;
 
-	private ConcurrentHashMap<String, Document> documentCache;
+	/**
+	 * Holds the bindings of all documents until the next commit, which writes each
+	 * document once
+	 */
+	private StagingStore stagingStore;
+
+	private int indexWorkers;
+
+	private int indexQueueSize;
 
 	private String lastDocument = null;
 
@@ -50,6 +95,12 @@ public class LuceneIndexWriter {
 
 	private LookupConfig config;
 
+	/**
+	 * The time of the last write of the staged documents, used to space out the flushes
+	 * in near-real-time mode
+	 */
+	private long lastFlush;
+
 
 	public LuceneIndexWriter(Logger logger, IndexWriter indexWriter, LookupConfig config) throws IOException {
 		
@@ -57,8 +108,16 @@ public class LuceneIndexWriter {
 		this.indexWriter = indexWriter;
 		this.config = config;
 
-		// Create a document cache to keep documents in between commits to the lucene structure
-		documentCache = new ConcurrentHashMap<String, Document>();
+		// Create a staging store to keep the bindings in between commits to the lucene structure
+		String stagingPath = config.getStagingPath() != null ? config.getStagingPath()
+				: System.getProperty("java.io.tmpdir");
+		long stagingMemory = (config.getStagingMemoryMB() > 0 ? config.getStagingMemoryMB()
+				: DEFAULT_STAGING_MEMORY_MB) * 1024L * 1024L;
+
+		stagingDirectory = new File(stagingPath, "lookup-staging-" + UUID.randomUUID());
+		stagingStore = new StagingStore(stagingDirectory, stagingMemory);
+		lastFlush = System.currentTimeMillis();
+
 		// Create the writer and searcher
 		try {
 			searcher = new IndexSearcher(DirectoryReader.open(indexWriter.getDirectory()));
@@ -117,6 +176,7 @@ public class LuceneIndexWriter {
 	public void clear() {
 		try {
 			// DELETUS!
+			stagingStore.clear();
 			indexWriter.deleteAll();
 			// Commit the changes
 			commit();
@@ -128,7 +188,9 @@ public class LuceneIndexWriter {
 	
 
 	public void cleanUp() {
-		if(this.stagingDirectory != null) {
+		stagingStore.clear();
+
+		if(this.stagingDirectory != null && this.stagingDirectory.exists()) {
 			for(File file : this.stagingDirectory.listFiles()) {
 				file.delete();	
 			}
@@ -141,6 +203,7 @@ public class LuceneIndexWriter {
 	public void indexResult(ResultSet result, IndexField path) {
 
 		int k = 0;
+		long start = System.currentTimeMillis();
 
 		while (result.hasNext()) {
 
@@ -157,6 +220,7 @@ public class LuceneIndexWriter {
 			}
 
 			indexField(lastDocument, path, lastValue);
+			flushStagedDocumentsIfDue();
 
 			if(config.getLogInterval() == 0) {
 				logger.info("Binding " + k + ": [" + lastDocument + "] -> \"" + lastValue + "\"");
@@ -166,6 +230,52 @@ public class LuceneIndexWriter {
 
 			k++;
 		}
+
+		long elapsed = System.currentTimeMillis() - start;
+
+		logger.info(String.format("Staged %d bindings in %d ms (%.0f bindings/s), %d runs spilled to disk", k,
+				elapsed, elapsed > 0 ? k * 1000.0 / elapsed : 0, stagingStore.getRunCount()));
+	}
+
+	/**
+	 * Writes the staged documents without a commit once the near-real-time flush interval
+	 * has passed, so the near-real-time searcher sees them on its next refresh. Without a
+	 * flush interval, each document is only written once on commit. With one, a document
+	 * is written at most once per interval, no matter how many index fields touch it
+	 */
+	private void flushStagedDocumentsIfDue() {
+
+		if (!config.isNearRealTime() || config.getNearRealTimeFlushInterval() <= 0) {
+			return;
+		}
+
+		if (System.currentTimeMillis() - lastFlush < config.getNearRealTimeFlushInterval()
+				|| stagingStore.getStagedBindings() == 0) {
+			return;
+		}
+
+		logger.info("Flushing staged documents for the near-real-time searcher");
+
+		try {
+			writeStagedDocuments();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// A failed flush is retried after the interval as well
+		lastFlush = System.currentTimeMillis();
+	}
+
+	/**
+	 * Logs the share of deleted documents in the committed index. Every re-written
+	 * document leaves a deleted copy behind until its segment is merged
+	 */
+	private void logDeletedDocs(IndexReader reader) {
+
+		int deletedDocs = reader.maxDoc() - reader.numDocs();
+
+		logger.info(String.format("Committed index has %d documents, deleted docs ratio %.3f", reader.numDocs(),
+				reader.maxDoc() > 0 ? (double) deletedDocs / reader.maxDoc() : 0));
 	}
 
 	public void indexField(String documentId, IndexField indexField, String valueString) {
@@ -187,152 +297,432 @@ public class LuceneIndexWriter {
 		}
 
 		try {
-			Document doc = findDocument(documentId);
-			
-			if(valueString != null) {
-				IndexableField[] existingFields = doc.getFields(field);
+			// Invalid numbers fail at the binding, not when the staged documents are written
+			if (fieldType.equals(Constants.CONFIG_FIELD_TYPE_NUMERIC)) {
+				Long.parseLong(valueString);
+			}
+
+			stagingStore.add(new StagingStore.Binding(documentId, field, fieldType, valueString));
 
-				for(IndexableField existingField : existingFields) {
-					if(existingField != null && valueString.equals(existingField.stringValue())) {
-						return;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Adds bindings to a document and records the bindings that changed the document
+	 *
+	 * @param sourceBindings The source bindings of the document, null if not recorded
+	 */
+	private void addBindings(Document doc, List<StagingStore.Binding> bindings,
+			List<StagingStore.Binding> sourceBindings) {
+
+		for (StagingStore.Binding binding : bindings) {
+
+			if (!addFieldValue(doc, binding.getField(), binding.getFieldType(), binding.getValue())
+					|| sourceBindings == null) {
+				continue;
+			}
+
+			// A numeric value replaces the previous value of the field
+			if (binding.getFieldType().equals(Constants.CONFIG_FIELD_TYPE_NUMERIC)) {
+
+				Iterator<StagingStore.Binding> iterator = sourceBindings.iterator();
+
+				while (iterator.hasNext()) {
+					if (iterator.next().getField().equals(binding.getField())) {
+						iterator.remove();
 					}
 				}
 			}
-			
-			switch (fieldType) {
-				case Constants.CONFIG_FIELD_TYPE_NUMERIC:
-					long value = Long.parseLong(valueString);
-					doc.removeFields(field);
-					doc.add(new StoredField(field, value));
-					doc.add(new LongPoint(field, value));
-					doc.add(new NumericDocValuesField(field, value));
-					break;
-				case Constants.CONFIG_FIELD_TYPE_STORED:
-					doc.add(new StoredField(field, valueString));
-					break;
-				case Constants.CONFIG_FIELD_TYPE_STRING:
-					doc.add(new StringField(field, valueString, Field.Store.YES));
-					break;
-				case Constants.CONFIG_FIELD_TYPE_STORED_SORTED:
-					doc.add(new StoredField(field, valueString));
-					doc.add(new SortedSetDocValuesField(field, new BytesRef(valueString)));
-					break;
-				case Constants.CONFIG_FIELD_TYPE_URI:
-					doc.add(new StringField(field, valueString, Field.Store.YES));
-					break;
-				default:
-					doc.add(new TextField(field, valueString, Field.Store.YES));
-					break;
+
+			sourceBindings.add(binding);
+		}
+	}
+
+	/**
+	 * Adds a staged field value to a document, unless the document already holds the value
+	 *
+	 * @return False if the document already holds the value
+	 */
+	private boolean addFieldValue(Document doc, String field, String fieldType, String valueString) {
+
+		if(valueString != null) {
+			IndexableField[] existingFields = doc.getFields(field);
+
+			for(IndexableField existingField : existingFields) {
+				if(existingField != null && valueString.equals(existingField.stringValue())) {
+					return false;
+				}
 			}
-			
-			indexWriter.updateDocument(new Term(Constants.FIELD_DOCUMENT_ID, documentId), doc);
+		}
+		
+		switch (fieldType) {
+			case Constants.CONFIG_FIELD_TYPE_NUMERIC:
+				long value = Long.parseLong(valueString);
+				doc.removeFields(field);
+				doc.add(new StoredField(field, value));
+				doc.add(new LongPoint(field, value));
+				doc.add(new NumericDocValuesField(field, value));
+				addRankFeatureField(doc, field, value);
+				break;
+			case Constants.CONFIG_FIELD_TYPE_STORED:
+				doc.add(new StoredField(field, valueString));
+				break;
+			case Constants.CONFIG_FIELD_TYPE_STRING:
+				doc.add(new StringField(field, valueString, Field.Store.YES));
+				break;
+			case Constants.CONFIG_FIELD_TYPE_STORED_SORTED:
+				doc.add(new StoredField(field, valueString));
+				doc.add(new SortedSetDocValuesField(field, new BytesRef(valueString)));
+				break;
+			case Constants.CONFIG_FIELD_TYPE_URI:
+				doc.add(new StringField(field, valueString, Field.Store.YES));
+				break;
+			default:
+				if (isOffsetField(field)) {
+					doc.add(new Field(field, valueString, TEXT_WITH_OFFSETS_TYPE));
+				} else {
+					doc.add(new TextField(field, valueString, Field.Store.YES));
+				}
+				break;
+		}
 
-		} catch (IOException e) {
-			e.printStackTrace();
+		// Like the documents rebuilt from their stored fields, every field type with a
+		// string value gets the prefix sub-field, as the searcher uses it for any type
+		if (!fieldType.equals(Constants.CONFIG_FIELD_TYPE_NUMERIC)) {
+			addPrefixGramField(doc, field, valueString);
 		}
+
+		return true;
 	}
 
-	private Document findDocument(String documentId) throws IOException {
+	/**
+	 * Checks whether a text field is indexed with offsets for the offset highlighter
+	 * 
+	 * @param field The field name
+	 * @return
+	 */
+	private boolean isOffsetField(String field) {
 
-		if(documentId == null) {
-			return null;
+		if (!config.isHighlightOffsets()) {
+			return false;
 		}
 
-		if (documentCache.containsKey(documentId)) {
-			return documentCache.get(documentId);
+		LookupField lookupField = config.getLookupField(field);
+		return lookupField != null && lookupField.isHighlight();
+	}
+
+	/**
+	 * Adds the value to the prefix sub-field of a field, if the field has one. The
+	 * edge n-grams are created by the analyzer of the sub-field
+	 */
+	private void addPrefixGramField(Document doc, String field, String value) {
+
+		LookupField lookupField = config.getLookupField(field);
+
+		if (lookupField != null && lookupField.getPrefixGramLength() > 0) {
+			doc.add(new Field(lookupField.getPrefixFieldName(), value, PREFIX_GRAM_TYPE));
 		}
+	}
 
-		// First try: search the index
-		Document document = getDocumentFromIndex(documentId);
+	/**
+	 * Indexes a numeric value as static rank feature, if the field is declared as one.
+	 * Rank features have to be positive, documents without a positive value get no
+	 * rank boost
+	 */
+	private void addRankFeatureField(Document doc, String field, long value) {
 
-		if (document == null) {
-			// Second try: create new document
-			document = new Document();
+		RankFeature rankFeature = config.getRankFeature(field);
 
-			document.add(new StringField(Constants.FIELD_DOCUMENT_ID, documentId, Field.Store.YES));
-			document.add(new SortedDocValuesField(Constants.FIELD_DOCUMENT_ID, new BytesRef(documentId)));
+		if (rankFeature == null) {
+			return;
 		}
 
-		// we touched the document, we might touch it again soon -> add to cache
-		documentCache.put(documentId, document);
-		return document;
+		doc.removeFields(rankFeature.getFeatureFieldName());
+
+		if (value > 0) {
+			doc.add(new FeatureField(rankFeature.getFeatureFieldName(), field, value));
+		}
 	}
 
-	private Document getDocumentFromIndex(String documentId) throws IOException {
+	/**
+	 * Merges the staged bindings and writes every touched document to the index once,
+	 * together with the values it already has in the index. With more than one index
+	 * worker, the documents are built and written by a pipeline of worker threads
+	 */
+	private void writeStagedDocuments() throws IOException {
+
+		long start = System.currentTimeMillis();
+		long bindings = stagingStore.getStagedBindings();
+		int runs = stagingStore.getRunCount();
+		LongAdder writtenDocuments = new LongAdder();
+		LongAdder foundDocuments = new LongAdder();
+
+		if (config.isNearRealTime()) {
+			// Documents flushed since the last commit are only found by a reader of the writer
+			replaceSearcher(DirectoryReader.open(indexWriter));
+		}
 
-		if (searcher == null) {
-			return null;
+		IndexReader reader = searcher != null ? searcher.getIndexReader() : null;
+
+		if (reader == null || reader.numDocs() == 0) {
+			logger.info("Index is empty, skipping document lookups");
 		}
 
-		Term documentIdTerm = new Term(Constants.FIELD_DOCUMENT_ID, documentId);
-		TermQuery documentIdTermQuery = new TermQuery(documentIdTerm);
+		DocumentPipeline.ConsumerFactory consumerFactory = () -> createDocumentConsumer(reader, writtenDocuments,
+				foundDocuments);
 
-		TopDocs docs = searcher.search(documentIdTermQuery, 1);
- 		StoredFields storedFields = searcher.storedFields();
- 		
-		if (docs.scoreDocs.length > 0) {
+		try {
+			if (indexWorkers > 1) {
 
-			ScoreDoc scoreDoc = docs.scoreDocs[0]; 
-			Document document = storedFields.document(scoreDoc.doc);
-				
-			document.removeFields(Constants.FIELD_DOCUMENT_ID);
-			document.add(new StringField(Constants.FIELD_DOCUMENT_ID, documentId, Field.Store.YES));
-			document.add(new SortedDocValuesField(Constants.FIELD_DOCUMENT_ID, new BytesRef(documentId)));
-			
-			// Fetched document fields are all reset to default stored/text fields
-			// Special fields such as the numeric fields have to be reset to their
-			// respective type
-			for (LookupField field : config.getLookupFields()) {
+				DocumentPipeline pipeline = new DocumentPipeline(indexWorkers,
+						indexQueueSize > 0 ? indexQueueSize : DEFAULT_INDEX_QUEUE_SIZE, consumerFactory);
+
+				try {
+					stagingStore.merge(pipeline);
+				} finally {
+					// The merge finishes the pipeline, unless it failed before
+					pipeline.finish();
+				}
+
+			} else {
+				stagingStore.merge(consumerFactory.create());
+			}
+
+		} catch (IOException e) {
+			// The bindings stay staged, the next commit writes the documents again
+			logger.error(String.format("Writing the staged documents failed after %d documents, keeping %d bindings staged",
+					writtenDocuments.sum(), stagingStore.getStagedBindings()));
+			throw e;
+		}
+
+		logger.info(String.format("Wrote %d documents (%d found in the index) for %d bindings from %d runs with %d workers in %d ms",
+				writtenDocuments.sum(), foundDocuments.sum(), bindings, runs, Math.max(1, indexWorkers),
+				System.currentTimeMillis() - start));
+	}
+
+	/**
+	 * Replaces the searcher used to find the documents in the index and closes the reader
+	 * of the previous searcher
+	 */
+	private void replaceSearcher(DirectoryReader reader) throws IOException {
+
+		IndexSearcher previousSearcher = searcher;
+		searcher = new IndexSearcher(reader);
+
+		if (previousSearcher != null) {
+			previousSearcher.getIndexReader().close();
+		}
+	}
+
+	/**
+	 * Creates a consumer that builds and writes the merged documents. Each consumer has its
+	 * own document id lookup, which seeks forward through the id terms as the documents
+	 * arrive in id order
+	 */
+	private StagingStore.DocumentConsumer createDocumentConsumer(IndexReader reader, LongAdder writtenDocuments,
+			LongAdder foundDocuments) throws IOException {
+
+		DocumentIdLookup documentIdLookup = new DocumentIdLookup(reader, Constants.FIELD_DOCUMENT_ID);
+		StoredFields storedFields = documentIdLookup.isEmpty() ? null : reader.storedFields();
+
+		return (documentId, documentBindings) -> {
+
+			if (writeDocument(documentId, documentBindings, documentIdLookup, storedFields)) {
+				foundDocuments.increment();
+			}
 
-				String fieldType = field.getType();
+			writtenDocuments.increment();
+		};
+	}
+
+	/**
+	 * Builds a document from the values it already has in the index and its staged bindings
+	 * and writes it to the index
+	 *
+	 * @return True if the document has been found in the index
+	 */
+	private boolean writeDocument(String documentId, List<StagingStore.Binding> documentBindings,
+			DocumentIdLookup documentIdLookup, StoredFields storedFields) throws IOException {
+
+		int doc = documentIdLookup.find(documentId);
+		List<StagingStore.Binding> sourceBindings = new ArrayList<StagingStore.Binding>();
+		Document document = null;
+
+		if (doc >= 0) {
+
+			BytesRef encodedBindings = storedFields.document(doc, SOURCE_BINDINGS_FIELD_SET)
+					.getBinaryValue(Constants.FIELD_SOURCE_BINDINGS);
+
+			if (encodedBindings != null) {
+				document = createDocument(documentId);
+				addBindings(document, SourceBindings.decode(documentId, encodedBindings), sourceBindings);
+			} else {
+				// Documents indexed without source bindings are reconstructed from their stored fields
+				document = getDocumentFromIndex(doc, documentId, storedFields);
+				sourceBindings = null;
+			}
+
+		} else {
+			document = createDocument(documentId);
+		}
+
+		addBindings(document, documentBindings, sourceBindings);
+
+		if (sourceBindings != null) {
+			document.add(new StoredField(Constants.FIELD_SOURCE_BINDINGS, SourceBindings.encode(sourceBindings)));
+		}
+
+		addSuggestFields(document);
+		indexWriter.updateDocument(new Term(Constants.FIELD_DOCUMENT_ID, documentId), document);
+		return doc >= 0;
+	}
+
+	/**
+	 * Adds the labels of the suggest fields to the completion field, weighted by the
+	 * popularity of the document. The completion field is not stored, it is added again
+	 * whenever the document is written
+	 */
+	private void addSuggestFields(Document document) {
+
+		if (config.getSuggestFields() == null) {
+			return;
+		}
 
-				if (fieldType == null) {
+		int weight = getSuggestWeight(document);
+
+		for (String field : config.getSuggestFields()) {
+			for (IndexableField labelField : document.getFields(field)) {
+
+				String label = labelField.stringValue();
+
+				if (label == null || label.trim().isEmpty()) {
 					continue;
 				}
 
-				if(fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_STORED_SORTED)) {
-					IndexableField[] storedSortedFields = document.getFields(field.getName());
-					String fieldName = field.getName();
-					document.removeFields(fieldName);
-
-					for(IndexableField storedField : storedSortedFields) {
-						String value = storedField.stringValue();
-						// Re-add the field
-						document.add(new StoredField(fieldName, value));
-						document.add(new SortedSetDocValuesField(fieldName, new BytesRef(value)));
-					}
-				
+				try {
+					document.add(new SuggestField(Constants.FIELD_SUGGEST, label, weight));
+				} catch (IllegalArgumentException e) {
+					logger.warn("Label '" + label + "' contains a reserved character and is not suggested");
 				}
+			}
+		}
+	}
+
+	/**
+	 * @return The value of the suggest weight field, capped to the range of a completion weight
+	 */
+	private int getSuggestWeight(Document document) {
+
+		if (config.getSuggestWeightField() == null) {
+			return 0;
+		}
+
+		IndexableField weightField = document.getField(config.getSuggestWeightField());
 
-				// Remove all numeric index fields and re-add them to the document as
-				// NumericDocValuesField (plus StoredField for retrieval)
-				if (fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_NUMERIC)) {
+		if (weightField == null || weightField.numericValue() == null) {
+			return 0;
+		}
+
+		return (int) Math.max(0, Math.min(Integer.MAX_VALUE, weightField.numericValue().longValue()));
+	}
 
-					// Fetch the field with the given index field name (does not support
-					// multi-values)
-					IndexableField numericField = document.getField(field.getName());
+	private Document createDocument(String documentId) {
 
-					// Only do this if a field with the given field name exists
-					if (numericField != null) {
+		Document document = new Document();
 
-						// Fetch the field long value
-						long value = numericField.numericValue().longValue();
+		document.add(new StringField(Constants.FIELD_DOCUMENT_ID, documentId, Field.Store.YES));
+		document.add(new SortedDocValuesField(Constants.FIELD_DOCUMENT_ID, new BytesRef(documentId)));
+		return document;
+	}
 
-						// Remove all fields with the respective name
-						document.removeFields(field.getName());
+	/**
+	 * Reconstructs a document indexed without source bindings from its stored fields
+	 */
+	private Document getDocumentFromIndex(int doc, String documentId, StoredFields storedFields) throws IOException {
 
-						// Re-add the field
-						document.add(new NumericDocValuesField(field.getName(), value));
-						document.add(new StoredField(field.getName(), value));
-						document.add(new LongPoint(field.getName(), value));
+		Document document = storedFields.document(doc);
+			
+		document.removeFields(Constants.FIELD_DOCUMENT_ID);
+		document.add(new StringField(Constants.FIELD_DOCUMENT_ID, documentId, Field.Store.YES));
+		document.add(new SortedDocValuesField(Constants.FIELD_DOCUMENT_ID, new BytesRef(documentId)));
+		
+		// Fetched document fields are all reset to default stored/text fields
+		// Special fields such as the numeric fields have to be reset to their
+		// respective type
+		for (LookupField field : config.getLookupFields()) {
+
+			// Prefix sub-fields are not stored and have to be re-created from the field values
+			if (field.getPrefixGramLength() > 0) {
+				for (IndexableField storedField : document.getFields(field.getName())) {
+					if (storedField.stringValue() != null) {
+						addPrefixGramField(document, field.getName(), storedField.stringValue());
 					}
 				}
 			}
 
-			return document;
+			String fieldType = field.getType();
+
+			if (fieldType == null) {
+				continue;
+			}
+
+			if(fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_STORED_SORTED)) {
+				IndexableField[] storedSortedFields = document.getFields(field.getName());
+				String fieldName = field.getName();
+				document.removeFields(fieldName);
+
+				for(IndexableField storedField : storedSortedFields) {
+					String value = storedField.stringValue();
+					// Re-add the field
+					document.add(new StoredField(fieldName, value));
+					document.add(new SortedSetDocValuesField(fieldName, new BytesRef(value)));
+				}
+			
+			}
+
+			// Remove all numeric index fields and re-add them to the document as
+			// NumericDocValuesField (plus StoredField for retrieval)
+			if (fieldType.contentEquals(Constants.CONFIG_FIELD_TYPE_NUMERIC)) {
+
+				// Fetch the field with the given index field name (does not support
+				// multi-values)
+				IndexableField numericField = document.getField(field.getName());
+
+				// Only do this if a field with the given field name exists
+				if (numericField != null) {
+
+					// Fetch the field long value
+					long value = numericField.numericValue().longValue();
+
+					// Remove all fields with the respective name
+					document.removeFields(field.getName());
+
+					// Re-add the field
+					document.add(new NumericDocValuesField(field.getName(), value));
+					document.add(new StoredField(field.getName(), value));
+					document.add(new LongPoint(field.getName(), value));
+					addRankFeatureField(document, field.getName(), value);
+				}
+			}
 		}
 
-		return null;
+		return document;
+	}
+
+	/**
+	 * Sets the number of worker threads that build and write the documents on commit
+	 */
+	public void setIndexWorkers(int indexWorkers) {
+		this.indexWorkers = indexWorkers;
+	}
+
+	/**
+	 * Sets the number of documents queued for each index worker
+	 */
+	public void setIndexQueueSize(int indexQueueSize) {
+		this.indexQueueSize = indexQueueSize;
 	}
 
 	public void commit() {
@@ -341,10 +731,12 @@ public class LuceneIndexWriter {
 		logger.info("=== COMMITING ===");
 
 		try {
+			writeStagedDocuments();
 			indexWriter.commit();
+			lastFlush = System.currentTimeMillis();
 
-			documentCache = new ConcurrentHashMap<String, Document>();
-			searcher = new IndexSearcher(DirectoryReader.open(indexWriter.getDirectory()));
+			replaceSearcher(DirectoryReader.open(indexWriter.getDirectory()));
+			logDeletedDocs(searcher.getIndexReader());
 			System.gc();
 
 		} catch (IOException e) {
@@ -0,0 +1,90 @@
+package org.dbpedia.lookup.indexer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Encodes the source bindings of a document to the compact binary value stored with the
+ * document. On an update, the bindings are decoded and added again with the field types
+ * they have been indexed with, instead of reconstructing the fields from the stored values
+ */
+public class SourceBindings {
+
+	private static final byte VERSION = 1;
+
+	private static final byte VALUE_NULL = 0;
+
+	private static final byte VALUE_PRESENT = 1;
+
+	/**
+	 * Encodes the bindings of a document. The document id is not encoded
+	 *
+	 * @param bindings The bindings
+	 * @return The encoded bindings
+	 */
+	public static byte[] encode(List<StagingStore.Binding> bindings) {
+
+		ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+
+		try {
+			out.writeByte(VERSION);
+			out.writeVInt(bindings.size());
+
+			for (StagingStore.Binding binding : bindings) {
+
+				out.writeString(binding.getField());
+				out.writeString(binding.getFieldType());
+
+				if (binding.getValue() == null) {
+					out.writeByte(VALUE_NULL);
+				} else {
+					out.writeByte(VALUE_PRESENT);
+					out.writeString(binding.getValue());
+				}
+			}
+		} catch (IOException e) {
+			// Writing to heap buffers does not fail
+			throw new IllegalStateException(e);
+		}
+
+		return out.toArrayCopy();
+	}
+
+	/**
+	 * Decodes the bindings of a document
+	 *
+	 * @param documentId The document id
+	 * @param encoded The encoded bindings
+	 * @return The bindings in the order they have been encoded
+	 * @throws IOException
+	 */
+	public static List<StagingStore.Binding> decode(String documentId, BytesRef encoded) throws IOException {
+
+		ByteArrayDataInput in = new ByteArrayDataInput(encoded.bytes, encoded.offset, encoded.length);
+
+		byte version = in.readByte();
+
+		if (version != VERSION) {
+			throw new IOException("Unknown source bindings version " + version);
+		}
+
+		int size = in.readVInt();
+		List<StagingStore.Binding> bindings = new ArrayList<StagingStore.Binding>(size);
+
+		for (int i = 0; i < size; i++) {
+
+			String field = in.readString();
+			String fieldType = in.readString();
+			String value = in.readByte() == VALUE_PRESENT ? in.readString() : null;
+
+			bindings.add(new StagingStore.Binding(documentId, field, fieldType, value));
+		}
+
+		return bindings;
+	}
+}
@@ -0,0 +1,393 @@
+package org.dbpedia.lookup.indexer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Stages the bindings of the documents until they are written to the index. Bindings
+ * are kept in memory up to a memory budget, then sorted by document id and spilled to
+ * a run file in the staging directory. On merge, the runs are read back in document id
+ * order, so all bindings of a document arrive together and the heap usage does not
+ * depend on the size of the corpus
+ */
+public class StagingStore {
+
+	private static final String RUN_FILE_PREFIX = "run-";
+
+	private static final byte RECORD_END = 0;
+
+	private static final byte RECORD_NEW_DOCUMENT = 1;
+
+	private static final byte RECORD_SAME_DOCUMENT = 2;
+
+	// Rough heap size of a binding object and its list slot, without the strings
+	private static final long BINDING_OVERHEAD = 64;
+
+	private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+	private static final Comparator<Binding> DOCUMENT_ORDER = new Comparator<Binding>() {
+		@Override
+		public int compare(Binding a, Binding b) {
+			return a.documentId.compareTo(b.documentId);
+		}
+	};
+
+	/**
+	 * A single field value of a document
+	 */
+	public static class Binding {
+
+		private final String documentId;
+
+		private final String field;
+
+		private final String fieldType;
+
+		private final String value;
+
+		public Binding(String documentId, String field, String fieldType, String value) {
+			this.documentId = documentId;
+			this.field = field;
+			this.fieldType = fieldType;
+			this.value = value;
+		}
+
+		public String getDocumentId() {
+			return documentId;
+		}
+
+		public String getField() {
+			return field;
+		}
+
+		public String getFieldType() {
+			return fieldType;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		private long sizeInBytes() {
+			return BINDING_OVERHEAD + 2L * (documentId.length() + field.length() + fieldType.length()
+					+ (value != null ? value.length() : 0));
+		}
+	}
+
+	/**
+	 * Receives the staged bindings of one document at a time
+	 */
+	public interface DocumentConsumer {
+
+		void accept(String documentId, List<Binding> bindings) throws IOException;
+
+		/**
+		 * Called after the last document. The merge only empties the store if this succeeds
+		 */
+		default void finish() throws IOException {
+		}
+	}
+
+	private final File directory;
+
+	private final long memoryBudget;
+
+	private List<Binding> bindings = new ArrayList<Binding>();
+
+	private long bytesUsed;
+
+	private List<File> runs = new ArrayList<File>();
+
+	private long stagedBindings;
+
+	/**
+	 * Creates a new staging store
+	 *
+	 * @param directory The directory for the run files, created on the first spill
+	 * @param memoryBudget The maximum heap size of the bindings kept in memory in bytes
+	 */
+	public StagingStore(File directory, long memoryBudget) {
+		this.directory = directory;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Stages a binding. If the memory budget is used up, the bindings in memory are spilled
+	 * to a run file
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void add(Binding binding) throws IOException {
+
+		bindings.add(binding);
+		bytesUsed += binding.sizeInBytes();
+		stagedBindings++;
+
+		if (bytesUsed >= memoryBudget) {
+			spill();
+		}
+	}
+
+	/**
+	 * @return The number of bindings staged since the last merge
+	 */
+	public synchronized long getStagedBindings() {
+		return stagedBindings;
+	}
+
+	/**
+	 * @return The number of run files spilled since the last merge
+	 */
+	public synchronized int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * Merges the runs and the bindings in memory and passes the bindings of each document
+	 * to the consumer, in document id order. Bindings of a document keep the order in which
+	 * they have been staged. The store is empty afterwards, unless the merge fails. Then all
+	 * staged bindings are kept, so the next merge passes the documents of the failed merge
+	 * again
+	 *
+	 * @param consumer The document consumer
+	 * @throws IOException The failure of a run or of the consumer
+	 */
+	public synchronized void merge(DocumentConsumer consumer) throws IOException {
+
+		Collections.sort(bindings, DOCUMENT_ORDER);
+
+		// Earlier runs hold earlier bindings and win ties, the bindings in memory come last
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, runs.size() + 1),
+				new Comparator<RunReader>() {
+					@Override
+					public int compare(RunReader a, RunReader b) {
+						int result = a.current.documentId.compareTo(b.current.documentId);
+						return result != 0 ? result : Integer.compare(a.index, b.index);
+					}
+				});
+
+		List<RunReader> readers = new ArrayList<RunReader>();
+
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				readers.add(new FileRunReader(i, runs.get(i)));
+			}
+
+			readers.add(new MemoryRunReader(runs.size(), bindings.iterator()));
+
+			for (RunReader reader : readers) {
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+
+			List<Binding> documentBindings = new ArrayList<Binding>();
+
+			while (!queue.isEmpty()) {
+
+				String documentId = queue.peek().current.documentId;
+				documentBindings.clear();
+
+				// Drains the bindings of the document from each run in run order
+				while (!queue.isEmpty() && queue.peek().current.documentId.equals(documentId)) {
+
+					RunReader reader = queue.poll();
+
+					do {
+						documentBindings.add(reader.current);
+					} while (reader.next() && reader.current.documentId.equals(documentId));
+
+					if (reader.current != null) {
+						queue.add(reader);
+					}
+				}
+
+				consumer.accept(documentId, documentBindings);
+			}
+
+			consumer.finish();
+
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+
+		clear();
+	}
+
+	/**
+	 * Discards all staged bindings and deletes the run files
+	 */
+	public synchronized void clear() {
+
+		for (File run : runs) {
+			run.delete();
+		}
+
+		runs = new ArrayList<File>();
+		bindings = new ArrayList<Binding>();
+		bytesUsed = 0;
+		stagedBindings = 0;
+	}
+
+	/**
+	 * Sorts the bindings in memory by document id and writes them to a new run file.
+	 * Consecutive bindings of the same document share the document id
+	 */
+	private void spill() throws IOException {
+
+		if (bindings.isEmpty()) {
+			return;
+		}
+
+		directory.mkdirs();
+
+		File run = new File(directory, RUN_FILE_PREFIX + runs.size());
+		Collections.sort(bindings, DOCUMENT_ORDER);
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(run), STREAM_BUFFER_SIZE))) {
+
+			String lastDocumentId = null;
+
+			for (Binding binding : bindings) {
+
+				if (binding.documentId.equals(lastDocumentId)) {
+					out.writeByte(RECORD_SAME_DOCUMENT);
+				} else {
+					out.writeByte(RECORD_NEW_DOCUMENT);
+					writeString(out, binding.documentId);
+					lastDocumentId = binding.documentId;
+				}
+
+				writeString(out, binding.field);
+				writeString(out, binding.fieldType);
+				writeString(out, binding.value);
+			}
+
+			out.writeByte(RECORD_END);
+		}
+
+		runs.add(run);
+		bindings = new ArrayList<Binding>();
+		bytesUsed = 0;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+
+		int length = in.readInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the bindings of a run in document id order
+	 */
+	private static abstract class RunReader {
+
+		protected final int index;
+
+		protected Binding current;
+
+		protected RunReader(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Moves to the next binding
+		 *
+		 * @return False if the run is exhausted
+		 */
+		abstract boolean next() throws IOException;
+
+		void close() {
+		}
+	}
+
+	private static class MemoryRunReader extends RunReader {
+
+		private final Iterator<Binding> iterator;
+
+		MemoryRunReader(int index, Iterator<Binding> iterator) {
+			super(index);
+			this.iterator = iterator;
+		}
+
+		@Override
+		boolean next() {
+			current = iterator.hasNext() ? iterator.next() : null;
+			return current != null;
+		}
+	}
+
+	private static class FileRunReader extends RunReader {
+
+		private final DataInputStream in;
+
+		private String documentId;
+
+		FileRunReader(int index, File run) throws IOException {
+			super(index);
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), STREAM_BUFFER_SIZE));
+		}
+
+		@Override
+		boolean next() throws IOException {
+
+			byte record = in.readByte();
+
+			if (record == RECORD_END) {
+				current = null;
+				return false;
+			}
+
+			if (record == RECORD_NEW_DOCUMENT) {
+				documentId = readString(in);
+			}
+
+			current = new Binding(documentId, readString(in), readString(in), readString(in));
+			return true;
+		}
+
+		@Override
+		void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.FilteredTermsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Fuzzy query that skips expansions found in fewer than a minimum number of documents
+ * and counts the expanded terms
+ */
+public class AdaptiveFuzzyQuery extends FuzzyQuery {
+
+	private final int minDocFreq;
+
+	private final LongAdder expandedTerms;
+
+	/**
+	 * Creates a new fuzzy query
+	 *
+	 * @param minDocFreq The minimum document frequency of an expansion, 0 to keep all
+	 * @param expandedTerms Counts the expanded terms, may be null
+	 */
+	public AdaptiveFuzzyQuery(Term term, int maxEdits, int prefixLength, int maxExpansions, int minDocFreq,
+			LongAdder expandedTerms) {
+		super(term, maxEdits, prefixLength, maxExpansions, FuzzyQuery.defaultTranspositions);
+		this.minDocFreq = minDocFreq;
+		this.expandedTerms = expandedTerms;
+	}
+
+	@Override
+	protected TermsEnum getTermsEnum(Terms terms, AttributeSource atts) throws IOException {
+
+		TermsEnum termsEnum = super.getTermsEnum(terms, atts);
+
+		if (minDocFreq <= 1 && expandedTerms == null) {
+			return termsEnum;
+		}
+
+		// The wrapped enum shares the attributes of the fuzzy terms enum, so the boosts
+		// of the expansions are kept
+		return new FilteredTermsEnum(termsEnum, false) {
+
+			@Override
+			protected AcceptStatus accept(BytesRef term) throws IOException {
+
+				if (tenum.docFreq() < minDocFreq) {
+					return AcceptStatus.NO;
+				}
+
+				if (expandedTerms != null) {
+					expandedTerms.increment();
+				}
+
+				return AcceptStatus.YES;
+			}
+		};
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + minDocFreq;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return super.equals(obj) && minDocFreq == ((AdaptiveFuzzyQuery) obj).minDocFreq;
+	}
+}
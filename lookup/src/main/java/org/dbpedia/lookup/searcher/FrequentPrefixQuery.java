@@ -0,0 +1,50 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.FilteredTermsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BoostAttribute;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Prefix query that is expanded to the most frequent terms starting with the prefix.
+ * The top terms rewrite keeps the terms with the highest boost, so the boost of each
+ * term is set to its document frequency. A plain prefix query boosts all terms alike,
+ * which keeps the terms that come first in the term dictionary instead
+ */
+public class FrequentPrefixQuery extends PrefixQuery {
+
+	/**
+	 * Creates a new prefix query
+	 *
+	 * @param maxExpansions The maximum number of terms the prefix is expanded to
+	 */
+	public FrequentPrefixQuery(Term prefix, int maxExpansions) {
+		super(prefix, new MultiTermQuery.TopTermsBlendedFreqScoringRewrite(maxExpansions));
+	}
+
+	@Override
+	protected TermsEnum getTermsEnum(Terms terms, AttributeSource atts) throws IOException {
+
+		TermsEnum termsEnum = super.getTermsEnum(terms, atts);
+
+		// The wrapped enum shares the attributes of the prefix terms enum, which are read
+		// by the rewrite
+		return new FilteredTermsEnum(termsEnum, false) {
+
+			private final BoostAttribute boost = attributes().addAttribute(BoostAttribute.class);
+
+			@Override
+			protected AcceptStatus accept(BytesRef term) throws IOException {
+				boost.setBoost(tenum.docFreq());
+				return AcceptStatus.YES;
+			}
+		};
+	}
+}
@@ -0,0 +1,122 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.dbpedia.lookup.Constants;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Streams search results as JSON directly to an output stream. Supports the formats
+ * JSON (highlighted values), JSON_RAW (stored values) and JSON_FULL (objects with
+ * both the stored and the highlighted value)
+ */
+public class JsonResultWriter implements ResultWriter {
+
+	private static final String FIELD_VALUE = "value";
+
+	private static final String FIELD_HIGHLIGHT = "highlight";
+
+	private static final String FIELD_SCORE = "score";
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory()
+			.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+	private final OutputStream out;
+
+	private final JsonGenerator generator;
+
+	private final boolean highlight;
+
+	private final boolean full;
+
+	public JsonResultWriter(OutputStream out, String format) throws IOException {
+		this.out = out;
+		this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+		this.full = Constants.CONFIG_FIELD_FORMAT_JSON_FULL.equalsIgnoreCase(format);
+		this.highlight = full || Constants.CONFIG_FIELD_FORMAT_JSON.equalsIgnoreCase(format);
+	}
+
+	@Override
+	public boolean usesHighlights() {
+		return highlight;
+	}
+
+	@Override
+	public void startResults(boolean partial) throws IOException {
+		generator.writeStartObject();
+
+		if (partial) {
+			generator.writeBooleanField(Constants.FIELD_PARTIAL, true);
+		}
+
+		generator.writeArrayFieldStart(Constants.FIELD_DOCUMENTS);
+	}
+
+	@Override
+	public void startDocument() throws IOException {
+		generator.writeStartObject();
+	}
+
+	@Override
+	public void startField(String name) throws IOException {
+		generator.writeArrayFieldStart(name);
+	}
+
+	@Override
+	public void writeValue(String value, String highlight) throws IOException {
+
+		if (full) {
+			generator.writeStartObject();
+
+			if (value != null) {
+				generator.writeStringField(FIELD_VALUE, value);
+			}
+
+			if (highlight != null) {
+				generator.writeStringField(FIELD_HIGHLIGHT, highlight);
+			}
+
+			generator.writeEndObject();
+			return;
+		}
+
+		if (this.highlight && highlight != null) {
+			value = highlight;
+		}
+
+		if (value == null) {
+			generator.writeNull();
+		} else {
+			generator.writeString(value);
+		}
+	}
+
+	@Override
+	public void endField() throws IOException {
+		generator.writeEndArray();
+	}
+
+	@Override
+	public void writeScore(float score) throws IOException {
+		generator.writeArrayFieldStart(FIELD_SCORE);
+		generator.writeString("" + score);
+		generator.writeEndArray();
+	}
+
+	@Override
+	public void endDocument() throws IOException {
+		generator.writeEndObject();
+	}
+
+	@Override
+	public void endResults() throws IOException {
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.flush();
+		out.write('\n');
+	}
+}
@@ -1,39 +1,64 @@
 package org.dbpedia.lookup.searcher;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FeatureField;
 import org.apache.lucene.document.LongPoint;
-import org.apache.lucene.document.StoredField;
 import org.apache.lucene.expressions.Expression;
 import org.apache.lucene.expressions.SimpleBindings;
 import org.apache.lucene.expressions.js.JavascriptCompiler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.function.FunctionScoreQuery;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.DoubleValuesSource;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.FuzzyQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryRescorer;
+import org.apache.lucene.search.Rescorer;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldCollectorManager;
+import org.apache.lucene.search.TopScoreDocCollectorManager;
+import org.apache.lucene.search.TotalHitCountCollectorManager;
 import org.apache.lucene.search.highlight.Fragmenter;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
@@ -41,14 +66,24 @@ import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
 import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.sandbox.search.CombinedFieldQuery;
 import org.apache.lucene.search.join.JoinUtil;
 import org.apache.lucene.search.join.ScoreMode;
+import org.apache.lucene.search.suggest.document.CompletionAnalyzer;
+import org.apache.lucene.search.suggest.document.CompletionQuery;
+import org.apache.lucene.search.suggest.document.FuzzyCompletionQuery;
+import org.apache.lucene.search.suggest.document.PrefixCompletionQuery;
+import org.apache.lucene.search.suggest.document.SuggestIndexSearcher;
+import org.apache.lucene.search.suggest.document.TopSuggestDocs;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.Operations;
 import org.dbpedia.lookup.Constants;
 import org.dbpedia.lookup.config.LookupConfig;
 import org.dbpedia.lookup.config.LookupField;
 import org.dbpedia.lookup.config.QuerySettings;
-import org.json.JSONArray;
+import org.dbpedia.lookup.config.RankFeature;
+import org.dbpedia.lookup.indexer.AnalyzerFactory;
 import org.json.JSONObject;;
 
 /**
@@ -59,330 +94,1249 @@ import org.json.JSONObject;;
  */
 public class LookupSearcher {
 
-	private static final String FIELD_DOCUMENTS = "docs";
+	private static final String FIELD_DOCUMENT_ID = "id";
+
+	private static final Set<String> FIELD_DOCUMENT_ID_SET = Collections.singleton(FIELD_DOCUMENT_ID);
+
+	private static final String FIELD_COUNT = "count";
+
+	private static final int STAGE_EXACT = 0;
+
+	private static final int STAGE_PREFIX = 1;
+
+	private static final int STAGE_FUZZY = 2;
+
+	private static final String[] STAGE_NAMES = { "exact", "prefix", "fuzzy" };
+
+	private static final int PROXIMITY_SLOP = 2;
+
+	private static final float NGRAM_MIN_SHOULD_MATCH = 0.3f;
+
+	private static final int DEFAULT_NRT_REFRESH_INTERVAL = 1000;
+
+	private static final int TOTAL_HITS_THRESHOLD = 1000;
+
+	private static final int SUGGEST_LABELS_PER_DOCUMENT = 4;
+
+	private static final int SUGGEST_FUZZY_EDITS = 1;
+
+	private static final int SUGGEST_NON_FUZZY_PREFIX = 1;
+
+	private volatile SearcherManager searcherManager;
+
+	private DoubleValuesSource boostValueSource;
+
+	private Query[] rankFeatureQueries;
+
+	private SimpleHTMLFormatter formatter;
+
+	private Analyzer analyzer;
+
+	private LookupConfig config;
+
+	private FSDirectory directory;
+
+	private IndexWriter indexWriter;
+
+	private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+	private QueryResultCache<byte[]> resultCache;
+
+	private SearchExecutor searchExecutor;
+
+	private LookupSearcherFactory searcherFactory;
+
+	private AtomicLong timedOutCount = new AtomicLong();
+
+	private AtomicLong cancelledCount = new AtomicLong();
+
+	private CompletionAnalyzer suggestAnalyzer;
+
+	private Set<String> suggestStoredFields;
+
+	private LongAdder fuzzyTermCount = new LongAdder();
+
+	private AtomicLong fuzzySearchCount = new AtomicLong();
+
+	private AtomicLong[] stageCounts = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+
+	/**
+	 * Creates a new lookup searcher
+	 * 
+	 * @param filePath The file path of the index
+	 * @throws IOException
+	 * @throws java.text.ParseException
+	 */
+	public LookupSearcher(LookupConfig config)
+			throws IOException, java.text.ParseException {
+		this(config, null);
+	}
+
+	/**
+	 * Creates a new lookup searcher. If near-real-time search is enabled in the config
+	 * and an index writer is passed, readers are opened directly from the writer and
+	 * uncommitted changes become searchable after the configured refresh interval
+	 * 
+	 * @param config The lookup config
+	 * @param indexWriter The live index writer, may be null
+	 * @throws IOException
+	 * @throws java.text.ParseException
+	 */
+	public LookupSearcher(LookupConfig config, IndexWriter indexWriter)
+			throws IOException, java.text.ParseException {
+
+		this.config = config;
+
+		if (config.isNearRealTime()) {
+			this.indexWriter = indexWriter;
+		}
+	
+		this.formatter = new SimpleHTMLFormatter();
+		// Shares the per-field analyzer of the index writer, if there is one
+		this.analyzer = indexWriter != null ? indexWriter.getAnalyzer() : AnalyzerFactory.createAnalyzer(config);
+
+		if (config.getSuggestFields() != null && config.getSuggestFields().length > 0) {
+			this.suggestAnalyzer = AnalyzerFactory.createSuggestAnalyzer();
+			this.suggestStoredFields = new HashSet<String>();
+			this.suggestStoredFields.add(FIELD_DOCUMENT_ID);
+
+			if (config.getSuggestWeightField() != null) {
+				this.suggestStoredFields.add(config.getSuggestWeightField());
+			}
+		}
+
+		if (config.getSearchThreads() > 0) {
+			this.searchExecutor = new SearchExecutor(config.getSearchThreads());
+		}
+
+		this.searcherFactory = new LookupSearcherFactory(config, searchExecutor);
+
+		if (config.getResultCacheSize() > 0) {
+			this.resultCache = new QueryResultCache<byte[]>(config.getResultCacheSize());
+		}
+
+		refresh();
+
+		createBoostSource(config);
+		createRankFeatureQueries(config);
+	}
+
+	/**
+	 * Refreshes the searcher. If no index has been opened yet, the index directory
+	 * is opened and a new searcher manager is created. Otherwise only the changed
+	 * segments are reopened. Searches that are still running keep working on their
+	 * acquired searcher until they release it.
+	 */
+	public synchronized void refresh() {
+
+		try {
+			if (searcherManager == null && indexWriter != null) {
+				openNearRealTime();
+			} else if (searcherManager == null) {
+
+				if (directory == null) {
+					this.directory = FSDirectory.open(new File(config.getIndexPath()).toPath());
+				}
+
+				if (!DirectoryReader.indexExists(directory)) {
+					System.out.println("Searcher could not find an index to read at " + config.getIndexPath() + ".");
+					return;
+				}
+
+				this.searcherManager = new SearcherManager(directory, searcherFactory);
+			} else {
+				searcherManager.maybeRefreshBlocking();
+			}
+
+			System.out.println("Searcher has been refreshed");
+		} catch (IOException e) {
+			System.out.println("Searcher could not find an index to read at " + config.getIndexPath() + ".");
+		}
+	}
+
+	/**
+	 * Opens a searcher manager on the live index writer and starts a background
+	 * thread that reopens the searcher in the configured refresh interval
+	 * 
+	 * @throws IOException
+	 */
+	private void openNearRealTime() throws IOException {
+
+		int refreshInterval = config.getNearRealTimeRefreshInterval();
+
+		if (refreshInterval <= 0) {
+			refreshInterval = DEFAULT_NRT_REFRESH_INTERVAL;
+		}
+
+		double refreshSeconds = refreshInterval / 1000.0;
+
+		this.searcherManager = new SearcherManager(indexWriter, searcherFactory);
+		this.reopenThread = new ControlledRealTimeReopenThread<IndexSearcher>(indexWriter, searcherManager,
+				refreshSeconds, refreshSeconds);
+		this.reopenThread.setName("NRT Searcher Reopen Thread");
+		this.reopenThread.setDaemon(true);
+		this.reopenThread.start();
+
+		System.out.println("Near-real-time searcher opened with a refresh interval of " + refreshInterval + "ms");
+	}
+
+	private void createBoostSource(LookupConfig config) {
+
+		String boostFormula = config.getBoostFormula();
+
+		if (boostFormula == null) {
+			return;
+		}
+
+		try {
+			Expression expression = JavascriptCompiler.compile(boostFormula);
+			SimpleBindings bindings = new SimpleBindings();
+
+			for (String variable : expression.variables) {
+				System.out.println("Adding double value source for " + variable);
+				bindings.add(variable, DoubleValuesSource.fromLongField(variable));
+			}
+
+			this.boostValueSource = expression.getDoubleValuesSource(bindings);
+
+		} catch (final Exception e) {
+			System.err.println("Failed to create boost value source:");
+			System.err.println(e.getMessage());
+			this.boostValueSource = null;
+		}
+	}
+
+	/**
+	 * Creates the query clauses that blend the static rank features into the score.
+	 * Unlike the boost formula, these clauses let Lucene skip blocks of documents that
+	 * cannot make it into the top hits
+	 */
+	private void createRankFeatureQueries(LookupConfig config) {
+
+		RankFeature[] rankFeatures = config.getRankFeatures();
+
+		if (rankFeatures == null) {
+			return;
+		}
+
+		List<Query> queries = new ArrayList<Query>();
+
+		for (RankFeature rankFeature : rankFeatures) {
+
+			try {
+				queries.add(createRankFeatureQuery(rankFeature));
+				System.out.println("Adding " + rankFeature.getFunction() + " rank feature for " + rankFeature.getField());
+			} catch (final Exception e) {
+				System.err.println("Failed to create rank feature query for " + rankFeature.getField() + ":");
+				System.err.println(e.getMessage());
+			}
+		}
+
+		this.rankFeatureQueries = queries.toArray(new Query[0]);
+	}
+
+	private Query createRankFeatureQuery(RankFeature rankFeature) {
+
+		String field = rankFeature.getFeatureFieldName();
+		String feature = rankFeature.getField();
+		String function = rankFeature.getFunction() != null ? rankFeature.getFunction().toLowerCase()
+				: RankFeature.FUNCTION_SATURATION;
+
+		switch (function) {
+			case RankFeature.FUNCTION_LOG:
+				return FeatureField.newLogQuery(field, feature, rankFeature.getWeight(),
+						rankFeature.getScalingFactor());
+			case RankFeature.FUNCTION_SIGMOID:
+				return FeatureField.newSigmoidQuery(field, feature, rankFeature.getWeight(),
+						rankFeature.getPivot(), rankFeature.getExponent());
+			case RankFeature.FUNCTION_LINEAR:
+				return FeatureField.newLinearQuery(field, feature, rankFeature.getWeight());
+			case RankFeature.FUNCTION_SATURATION:
+				if (rankFeature.getPivot() > 0) {
+					return FeatureField.newSaturationQuery(field, feature, rankFeature.getWeight(),
+							rankFeature.getPivot());
+				}
+
+				// The pivot is approximated from the indexed feature values
+				return new BoostQuery(FeatureField.newSaturationQuery(field, feature), rankFeature.getWeight());
+			default:
+				throw new IllegalArgumentException("Unknown rank feature function " + function);
+		}
+	}
+
+	/**
+	 * Adds the rank feature clauses to the query
+	 */
+	private Query addRankFeatures(Query query) {
+
+		if (rankFeatureQueries == null || rankFeatureQueries.length == 0) {
+			return query;
+		}
+
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(query, Occur.MUST);
+
+		for (Query rankFeatureQuery : rankFeatureQueries) {
+			builder.add(rankFeatureQuery, Occur.SHOULD);
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Searches the index based on a given query and writes the results to the output stream
+	 * 
+	 * @param queryMap Maps a queryfield for a field specific query
+	 * @param out The output stream
+	 * @param writerFactory Creates the writer serializing the results
+	 * @param cancellation Returns true once the request has been cancelled, may be null
+	 * @return False, if there is no index to search
+	 * @throws IOException
+	 */
+	public boolean search(QuerySettings settings, Hashtable<LookupField, String> queryMap,
+			String join, OutputStream out, ResultWriterFactory writerFactory, BooleanSupplier cancellation)
+			throws IOException {
+
+		LookupField[] fields = new LookupField[queryMap.size()];
+		String[] queries = new String[queryMap.size()];
+
+		int i = 0;
+
+		for (Entry<LookupField, String> entry : queryMap.entrySet()) {
+			fields[i] = entry.getKey();
+			queries[i] = entry.getValue();
+			i++;
+		}
+
+		return search(fields, queries, settings, join, out, writerFactory, cancellation);
+	}
+
+	/**
+	 * Searches the index based on a given query and writes the results to the output stream
+	 * 
+	 * @param out The output stream
+	 * @param writerFactory Creates the writer serializing the results
+	 * @param cancellation Returns true once the request has been cancelled, may be null
+	 * @return False, if there is no index to search
+	 * @throws IOException
+	 */
+	public boolean search(LookupField[] fields, String[] queries, QuerySettings settings,
+			String join, OutputStream out, ResultWriterFactory writerFactory, BooleanSupplier cancellation)
+			throws IOException {
+
+		// The manager is read once, a concurrent close must not swap it between acquire and release
+		SearcherManager manager = this.searcherManager;
+
+		if(manager == null) {
+			return false;
+		}
+
+		if (fields.length != queries.length) {
+			return false;
+		}
+
+		IndexSearcher acquiredSearcher = manager.acquire();
+
+		try {
+			IndexSearcher searcher = acquiredSearcher;
+			SearchTimeout timeout = null;
+
+			if (config.getQueryTimeout() > 0 || cancellation != null) {
+				// The searcher is shared between requests, the timeout is applied to each search call
+				timeout = new SearchTimeout(config.getQueryTimeout(), cancellation);
+			}
+
+			if (resultCache == null) {
+				writeResults(searcher, fields, queries, settings, join, writerFactory.create(out), timeout);
+				return true;
+			}
+
+			// The reader version changes with every refresh that picked up index changes
+			long generation = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+			String cacheKey = QueryKey.create(fields, queries, settings, join);
+			byte[] result = resultCache.get(cacheKey, generation);
+
+			if (result == null) {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				boolean partial = writeResults(searcher, fields, queries, settings, join,
+						writerFactory.create(buffer), timeout);
+				result = buffer.toByteArray();
+
+				// Partial results must not be served to later requests
+				if (!partial) {
+					resultCache.put(cacheKey, generation, result);
+				}
+			}
+
+			out.write(result);
+			return true;
+
+		} finally {
+			release(manager, acquiredSearcher);
+		}
+	}
+
+	/**
+	 * Writes the most popular completions of a prefix to the result writer. The
+	 * completions are looked up in the completion field of the acquired searcher, so
+	 * they follow the refreshes of the index
+	 * 
+	 * @param prefix The typed prefix
+	 * @param count The maximum number of completions, no completions are written if 0 or less
+	 * @param fuzzy True to include completions of similar prefixes
+	 * @param writer The result writer
+	 * @return False, if the index has no suggester
+	 * @throws IOException
+	 */
+	public boolean suggest(String prefix, int count, boolean fuzzy, ResultWriter writer) throws IOException {
+
+		SearcherManager manager = this.searcherManager;
+
+		if (manager == null || suggestAnalyzer == null) {
+			return false;
+		}
+
+		IndexSearcher acquiredSearcher = manager.acquire();
+
+		try {
+			SuggestIndexSearcher searcher = new SuggestIndexSearcher(acquiredSearcher.getIndexReader());
+			Term prefixTerm = new Term(Constants.FIELD_SUGGEST, prefix);
+			Map<Integer, String> labels = new LinkedHashMap<Integer, String>();
+
+			addSuggestions(searcher, new PrefixCompletionQuery(suggestAnalyzer, prefixTerm), count, labels);
+
+			if (fuzzy && labels.size() < count) {
+				addSuggestions(searcher, new FuzzyCompletionQuery(suggestAnalyzer, prefixTerm, null,
+						SUGGEST_FUZZY_EDITS, true, SUGGEST_NON_FUZZY_PREFIX,
+						FuzzyCompletionQuery.DEFAULT_MIN_FUZZY_LENGTH, true,
+						Operations.DEFAULT_DETERMINIZE_WORK_LIMIT), count, labels);
+			}
+
+			StoredFields storedFields = searcher.storedFields();
+			writer.startResults(false);
+
+			for (Entry<Integer, String> suggestion : labels.entrySet()) {
+
+				Document document = storedFields.document(suggestion.getKey(), suggestStoredFields);
+				IndexableField weightField = config.getSuggestWeightField() != null
+						? document.getField(config.getSuggestWeightField())
+						: null;
+
+				writer.startDocument();
+				writer.startField(FIELD_DOCUMENT_ID);
+				writer.writeValue(document.get(FIELD_DOCUMENT_ID), null);
+				writer.endField();
+				writer.startField(Constants.FIELD_LABEL);
+				writer.writeValue(suggestion.getValue(), null);
+				writer.endField();
+				writer.writeScore(weightField != null && weightField.numericValue() != null
+						? weightField.numericValue().longValue()
+						: 0);
+				writer.endDocument();
+			}
+
+			writer.endResults();
+			return true;
+
+		} finally {
+			release(manager, acquiredSearcher);
+		}
+	}
+
+	/**
+	 * Adds the labels of the best completions to the passed map, one label per document.
+	 * A document can have several labels, so more completions are looked up than needed
+	 */
+	private void addSuggestions(SuggestIndexSearcher searcher, CompletionQuery query, int count,
+			Map<Integer, String> labels) throws IOException {
+
+		// The suggest searcher rejects a count of 0
+		if (count <= 0) {
+			return;
+		}
+
+		int labelCount = (int) Math.min((long) count * SUGGEST_LABELS_PER_DOCUMENT, Integer.MAX_VALUE);
+		TopSuggestDocs docs = searcher.suggest(query, labelCount, false);
+
+		for (TopSuggestDocs.SuggestScoreDoc suggestion : docs.scoreLookupDocs()) {
+
+			if (labels.size() >= count) {
+				return;
+			}
+
+			labels.putIfAbsent(suggestion.doc, suggestion.key.toString());
+		}
+	}
+
+	/**
+	 * Builds the lucene query from the query fields
+	 * 
+	 * @param forHighlighting True to create the query for the highlighters, which
+	 * matches prefixes on the queried fields instead of their n-gram sub-fields
+	 * @param stage The widest match type of the query (exact, prefix or fuzzy)
+	 * @return The query
+	 * @throws IOException
+	 */
+	private Query createQuery(LookupField[] fields, String[] queries, QuerySettings settings,
+			boolean forHighlighting, int stage) throws IOException {
+
+		BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+
+		// Text fields queried with the same input are scored together as one combined field
+		List<List<Integer>> fieldGroups = settings.isCombinedFields() && !forHighlighting
+				? groupCombinedFields(fields, queries)
+				: new ArrayList<List<Integer>>();
+
+		boolean[] grouped = new boolean[fields.length];
+
+		for (List<Integer> fieldGroup : fieldGroups) {
+
+			for (int i : fieldGroup) {
+				grouped[i] = true;
+			}
+
+			queryBuilder.add(createCombinedQuery(fields, queries, fieldGroup, settings, stage), Occur.SHOULD);
+		}
+
+		for (int i = 0; i < fields.length; i++) {
+
+			if (grouped[i]) {
+				continue;
+			}
+
+			String field = fields[i].getName();
+			String query = queries[i];
+			boolean required = fields[i].isRequired();
+			boolean allowPartialMatch = fields[i].isAllowPartialMatch();
+			boolean isExact = fields[i].isExact();
+
+			// System.out.println("Searching on " + field + "(" + fields[i].getType() + ")");
+
+			if(Constants.CONFIG_FIELD_TYPE_NUMERIC.equals(fields[i].getType())) {
+				
+				// System.out.println("Field is numeric.");
+				
+				if(query.contains(",")) {
+
+					// System.out.println("Might be a range query");
+				
+					String[] conditionStrings = query.split(",");
+
+					if(conditionStrings.length != 2) {
+						continue;
+					}
+
+					int lowerBound = parseIntWithFallback(conditionStrings[0], Integer.MIN_VALUE);
+					int upperBound = parseIntWithFallback(conditionStrings[1], Integer.MAX_VALUE);
+
+					Query rangeQuery = LongPoint.newRangeQuery(field, lowerBound, upperBound);
+					// System.out.println("Adding range query with range: " + lowerBound + "," + upperBound);
+					
+					queryBuilder.add(rangeQuery, fields[i].isFilter() ? Occur.FILTER : Occur.MUST);
+				}
+
+				continue;					
+			}
+
+			// N-gram fields are matched on their grams, prefix and fuzzy matches would only
+			// expand to more grams
+			if (isNGramField(fields[i]) && fields[i].tokenize() && !isExact && !fields[i].isFilter()) {
+
+				Query ngramQuery = new BoostQuery(createNGramQuery(fields[i], query, settings),
+						fields[i].getWeight());
+
+				queryBuilder.add(ngramQuery, required ? Occur.MUST : Occur.SHOULD);
+				continue;
+			}
+
+			List<String> tokens;
+
+			if (fields[i].tokenize()) {
+
+				if(isExact) {
+					
+					tokens = new ArrayList<String>();
+					String[] exactTokens = query.split(" ");
+					
+					for(int t = 0; t < exactTokens.length; t++) {
+						tokens.add(exactTokens[t]);
+					}
+				}
+				else {
+					tokens = analyze(field, query);
+				}
+
+			} else {
+				tokens = new ArrayList<String>();
+
+				if (isExact) {
+					tokens.add(query);
+				} else {
+					tokens.add(query.toLowerCase());
+				}
+			}
+
+			BooleanQuery.Builder tokenQueryBuilder = new BooleanQuery.Builder();
+
+			for (String token : tokens) {
+
+				// Filters only match the tokens themselves, so the same restriction results in
+				// the same query and can be cached across requests
+				Query tokenQuery = fields[i].isFilter() ? new TermQuery(new Term(field, token))
+						: new BoostQuery(createQueryFromToken(fields[i], token, settings, forHighlighting, stage),
+								fields[i].getWeight());
+
+				tokenQueryBuilder = tokenQueryBuilder.add(tokenQuery,
+						allowPartialMatch ? Occur.SHOULD : Occur.MUST);
+			}
+
+			Occur occur = required ? Occur.MUST : Occur.SHOULD;
+
+			if (fields[i].isFilter()) {
+				occur = Occur.FILTER;
+			}
+
+			queryBuilder = queryBuilder.add(tokenQueryBuilder.build(), occur);
+		}
+
+		return queryBuilder.build();
+	}
+
+	/**
+	 * Creates the query for an n-gram field. The input is split into the same grams as the
+	 * indexed values and at least 30% of the grams have to match
+	 * 
+	 * @param lookupField The n-gram field
+	 * @param query The query input
+	 * @return The query
+	 * @throws IOException
+	 */
+	private Query createNGramQuery(LookupField lookupField, String query, QuerySettings settings)
+			throws IOException {
+
+		LinkedHashSet<String> grams = new LinkedHashSet<String>(analyze(lookupField.getName(), query));
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+
+		for (String gram : grams) {
+			builder.add(new TermQuery(new Term(lookupField.getName(), gram)), Occur.SHOULD);
+		}
+
+		builder.setMinimumNumberShouldMatch(Math.max(1, (int) Math.ceil(grams.size() * NGRAM_MIN_SHOULD_MATCH)));
+		return new BoostQuery(builder.build(), settings.getExactMatchBoost());
+	}
+
+	private boolean isNGramField(LookupField lookupField) {
+		return Constants.CONFIG_FIELD_TYPE_NGRAM.equals(lookupField.getType());
+	}
+
+	/**
+	 * Groups the optional, tokenized text fields that share a field type and are queried
+	 * with the same input
+	 * 
+	 * @return The groups of field indices with at least two fields
+	 */
+	private List<List<Integer>> groupCombinedFields(LookupField[] fields, String[] queries) {
+
+		LinkedHashMap<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+
+		for (int i = 0; i < fields.length; i++) {
+
+			LookupField field = fields[i];
+
+			if (Constants.CONFIG_FIELD_TYPE_NUMERIC.equals(field.getType()) || isNGramField(field)
+					|| field.isExact() || field.isRequired() || field.isFilter() || !field.tokenize()
+					|| field.getWeight() <= 0) {
+				continue;
+			}
+
+			String key = field.getType() + ";" + field.isAllowPartialMatch() + ";" + queries[i];
+			List<Integer> group = groups.get(key);
+
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(key, group);
+			}
+
+			group.add(i);
+		}
+
+		List<List<Integer>> result = new ArrayList<List<Integer>>();
+
+		for (List<Integer> group : groups.values()) {
+			if (group.size() > 1) {
+				result.add(group);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates the query for a group of fields. Exact token matches are scored with BM25F
+	 * over all fields of the group, prefix and fuzzy matches on each field
+	 * 
+	 * @param fieldGroup The indices of the grouped fields, all queried with the same input
+	 * @return The query
+	 * @throws IOException
+	 */
+	private Query createCombinedQuery(LookupField[] fields, String[] queries, List<Integer> fieldGroup,
+			QuerySettings settings, int stage) throws IOException {
+
+		// All fields of the group share a field type and thus an analyzer
+		LookupField firstField = fields[fieldGroup.get(0)];
+		List<String> tokens = analyze(firstField.getName(), queries[fieldGroup.get(0)]);
+
+		// Combined field weights have to be at least 1, so the smallest weight becomes the boost
+		float minWeight = Float.MAX_VALUE;
+
+		for (int i : fieldGroup) {
+			minWeight = Math.min(minWeight, fields[i].getWeight());
+		}
+
+		BooleanQuery.Builder tokenQueryBuilder = new BooleanQuery.Builder();
+
+		for (String token : tokens) {
+
+			BooleanQuery.Builder builder = new BooleanQuery.Builder();
+			builder.setMinimumNumberShouldMatch(1);
+
+			if (settings.getExactMatchBoost() > 0) {
+
+				CombinedFieldQuery.Builder combinedBuilder = new CombinedFieldQuery.Builder();
+
+				for (int i : fieldGroup) {
+					combinedBuilder.addField(fields[i].getName(), fields[i].getWeight() / minWeight);
+				}
+
+				combinedBuilder.addTerm(new BytesRef(token));
+				builder.add(new BoostQuery(combinedBuilder.build(), settings.getExactMatchBoost() * minWeight),
+						Occur.SHOULD);
+			}
+
+			for (int i : fieldGroup) {
+
+				BooleanQuery.Builder expansionBuilder = new BooleanQuery.Builder();
+				addExpansionClauses(expansionBuilder, fields[i], new Term(fields[i].getName(), token), settings,
+						false, stage);
+
+				BooleanQuery expansionQuery = expansionBuilder.build();
+
+				if (!expansionQuery.clauses().isEmpty()) {
+					builder.add(new BoostQuery(expansionQuery, fields[i].getWeight()), Occur.SHOULD);
+				}
+			}
+
+			tokenQueryBuilder.add(builder.build(), firstField.isAllowPartialMatch() ? Occur.SHOULD : Occur.MUST);
+		}
+
+		return tokenQueryBuilder.build();
+	}
+
+	/**
+	 * Creates the query for the highlighters. Prefix matches on n-gram sub-fields and
+	 * combined field matches are not found by the highlighters, which only look at the
+	 * highlighted field itself
+	 */
+	private Query createHighlightQuery(Query query, LookupField[] fields, String[] queries,
+			QuerySettings settings, String join, int stage) throws IOException {
+
+		if (join == null && (hasPrefixGramField(fields) || settings.isCombinedFields())) {
+			return createQuery(fields, queries, settings, true, stage);
+		}
+
+		return query;
+	}
+
+	/**
+	 * Adds the rank features and the boost formula to the query
+	 * 
+	 * @param boost False to leave the boost formula to the rescoring pass
+	 */
+	private Query addScoreBoosts(Query query, boolean boost) {
+
+		query = addRankFeatures(query);
+
+		if (boost && boostValueSource != null) {
+			query = FunctionScoreQuery.boostByValue(query, boostValueSource);
+		}
+
+		return query;
+	}
+
+	/**
+	 * Rescores the first pass hits with a bonus for query terms found close to each other
+	 * and the boost formula, and keeps the best hits
+	 * 
+	 * @param docs The first pass hits
+	 * @return The best rescored hits
+	 * @throws IOException
+	 */
+	private TopDocs rescore(IndexSearcher searcher, TopDocs docs, LookupField[] fields, String[] queries,
+			QuerySettings settings) throws IOException {
+
+		int window = docs.scoreDocs.length;
+		Query proximityQuery = createProximityQuery(fields, queries);
+
+		if (proximityQuery != null && settings.getRescoreWeight() != 0) {
+			docs = QueryRescorer.rescore(searcher, docs, proximityQuery, settings.getRescoreWeight(), window);
+		}
+
+		if (boostValueSource != null) {
+
+			Query boostQuery = new FunctionScoreQuery(new MatchAllDocsQuery(), boostValueSource);
+
+			// Multiplies the scores just like the boost formula does in a single pass
+			Rescorer boostRescorer = new QueryRescorer(boostQuery) {
+				@Override
+				protected float combine(float firstPassScore, boolean secondPassMatches, float secondPassScore) {
+					return secondPassMatches ? firstPassScore * secondPassScore : firstPassScore;
+				}
+			};
+
+			docs = boostRescorer.rescore(searcher, docs, window);
+		}
+
+		if (docs.scoreDocs.length > settings.getMaxResult()) {
+			docs = new TopDocs(docs.totalHits, Arrays.copyOf(docs.scoreDocs, settings.getMaxResult()));
+		}
+
+		return docs;
+	}
+
+	/**
+	 * Creates sloppy phrase queries on the fields queried with more than one token
+	 * 
+	 * @return The proximity query or null, if no field has been queried with several tokens
+	 * @throws IOException
+	 */
+	private Query createProximityQuery(LookupField[] fields, String[] queries) throws IOException {
+
+		BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+		int clauseCount = 0;
+
+		for (int i = 0; i < fields.length; i++) {
+
+			if (Constants.CONFIG_FIELD_TYPE_NUMERIC.equals(fields[i].getType()) || isNGramField(fields[i])
+					|| fields[i].isExact() || fields[i].isFilter() || !fields[i].tokenize()) {
+				continue;
+			}
+
+			List<String> tokens = analyze(fields[i].getName(), queries[i]);
+
+			if (tokens.size() < 2) {
+				continue;
+			}
+
+			PhraseQuery phraseQuery = new PhraseQuery(PROXIMITY_SLOP, fields[i].getName(),
+					tokens.toArray(new String[0]));
+
+			queryBuilder.add(new BoostQuery(phraseQuery, fields[i].getWeight()), Occur.SHOULD);
+			clauseCount++;
+		}
 
-	private static final String FIELD_RESULT = "result";
+		return clauseCount > 0 ? queryBuilder.build() : null;
+	}
 
-	private static final String FIELD_DOCUMENT_ID = "id";
+	/**
+	 * @return The widest stage of a query, stages without boost are left out
+	 */
+	private int getLastStage(QuerySettings settings) {
 
-	private static final String FIELD_COUNT = "count";
+		if (settings.getFuzzyMatchBoost() > 0) {
+			return STAGE_FUZZY;
+		}
 
-	private static final String FIELD_VALUE = "value";
+		if (settings.getPrefixMatchBoost() > 0) {
+			return STAGE_PREFIX;
+		}
 
-	private static final String FIELD_HIGHLIGHT = "highlight";
+		return STAGE_EXACT;
+	}
 
-	private IndexSearcher searcher;
+	private int countHits(TopDocs docs, float minScore) {
 
-	private DoubleValuesSource boostValueSource;
+		int hitCount = 0;
 
-	private SimpleHTMLFormatter formatter;
+		for (ScoreDoc hit : docs.scoreDocs) {
+			if (hit.score >= minScore) {
+				hitCount++;
+			}
+		}
 
-	private DirectoryReader reader;
+		return hitCount;
+	}
 
-	private StandardAnalyzer analyzer;
+	private boolean hasPrefixGramField(LookupField[] fields) {
 
-	private LookupConfig config;
+		for (LookupField field : fields) {
+			if (field.getPrefixGramLength() > 0) {
+				return true;
+			}
+		}
 
-	private FSDirectory directory;
+		return false;
+	}
 
 	/**
-	 * Creates a new lookup searcher
+	 * Builds the lucene query from the query fields, runs it on the passed searcher and
+	 * passes the hits to the result writer
 	 * 
-	 * @param filePath The file path of the index
+	 * @param searcher The acquired index searcher
+	 * @param writer The result writer
+	 * @param timeout The timeout of the request or null
+	 * @return True if the search was stopped early and the results are partial
 	 * @throws IOException
-	 * @throws java.text.ParseException
 	 */
-	public LookupSearcher(LookupConfig config)
-			throws IOException, java.text.ParseException {
+	private boolean writeResults(IndexSearcher searcher, LookupField[] fields, String[] queries,
+			QuerySettings settings, String join, ResultWriter writer, SearchTimeout timeout) throws IOException {
+
+		// Staged queries start with exact matches only and are widened until there are
+		// enough hits
+		boolean staged = settings.isStagedQueries() && join == null && settings.getMaxResult() > 0;
+		int lastStage = getLastStage(settings);
+		int stage = staged ? STAGE_EXACT : lastStage;
+
+		// Rescored queries leave the expensive signals to a second pass over the top hits
+		boolean rescored = settings.getRescoreWindow() > 0 && join == null && settings.getMaxResult() > 0;
+		int firstPassResults = rescored ? Math.max(settings.getRescoreWindow(), settings.getMaxResult())
+				: settings.getMaxResult();
+
+		Query query = createQuery(fields, queries, settings, false, stage);
+		Query highlightQuery = createHighlightQuery(query, fields, queries, settings, join, stage);
+		query = addScoreBoosts(query, !rescored);
+		
+		HashMap<String, Float> joinScoreMap = null;
 
-		this.config = config;
-	
-		this.formatter = new SimpleHTMLFormatter();
-		this.analyzer = new StandardAnalyzer();
+		if (join != null) {
 
-		refresh();
+			TopDocs joinDocs = runQuery(searcher, query, 10000, false, timeout);
+			joinScoreMap = createJoinScoreMap(searcher, joinDocs);
 
-		createBoostSource(config);
-	}
+			query = JoinUtil.createJoinQuery(FIELD_DOCUMENT_ID, true, join,
+				query, searcher, ScoreMode.None);
 
-	public void refresh() {
+			System.out.println(query);
+			highlightQuery = query;
+		}
 
-		if(directory != null) {
-			try {
-				directory.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+		if (settings.getMaxResult() == 0) {
+			
+			int hitCount = count(searcher, query, timeout);
+			boolean partial = isPartial(timeout);
+
+			writer.startResults(partial);
+
+			if (settings.getMinScore() <= 1) {
+				writer.startDocument();
+				writer.startField(FIELD_COUNT);
+				writer.writeValue("" + hitCount, null);
+				writer.endField();
+				writer.writeScore(1);
+				writer.endDocument();
 			}
+
+			writer.endResults();
+			return partial;
 		}
 
-		if(reader != null) {
-			try {
-				reader.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+		TopDocs docs = search(searcher, query, firstPassResults, settings.isEarlyTermination(), timeout);
+
+		while (stage < lastStage && countHits(docs, settings.getMinScore()) < settings.getMaxResult()) {
+
+			stage++;
+
+			if (stage == STAGE_PREFIX && settings.getPrefixMatchBoost() <= 0) {
+				stage++;
 			}
+
+			query = createQuery(fields, queries, settings, false, stage);
+			highlightQuery = createHighlightQuery(query, fields, queries, settings, join, stage);
+			query = addScoreBoosts(query, !rescored);
+
+			docs = search(searcher, query, firstPassResults, settings.isEarlyTermination(), timeout);
 		}
-		
-		try {
-			this.directory = FSDirectory.open(new File(config.getIndexPath()).toPath());	
-			this.reader = DirectoryReader.open(directory);
-			this.searcher = new IndexSearcher(reader);
-			System.out.println("Searcher has been refreshed");
-		} catch (IOException e) {
-			System.out.println("Searcher could not find an index to read at " + config.getIndexPath() + ".");
+
+		if (staged) {
+			stageCounts[stage].incrementAndGet();
 		}
-	
-	}
 
-	private void createBoostSource(LookupConfig config) {
+		if (stage == STAGE_FUZZY && settings.getFuzzyMatchBoost() > 0) {
+			fuzzySearchCount.incrementAndGet();
+		}
 
-		String boostFormula = config.getBoostFormula();
+		if (rescored) {
+			docs = rescore(searcher, docs, fields, queries, settings);
+		}
 
-		if (boostFormula == null) {
-			return;
+		boolean partial = isPartial(timeout);
+
+		writer.startResults(partial);
+
+		StoredFields storedFields = searcher.storedFields();
+		ScoreDoc[] hits = docs.scoreDocs;
+
+		if (join != null) {
+			rescoreJoinHits(storedFields, hits, join, joinScoreMap);
 		}
 
-		try {
-			Expression expression = JavascriptCompiler.compile(boostFormula);
-			SimpleBindings bindings = new SimpleBindings();
+		int[] docIds = new int[hits.length];
+		int hitCount = 0;
 
-			for (String variable : expression.variables) {
-				System.out.println("Adding double value source for " + variable);
-				bindings.add(variable, DoubleValuesSource.fromLongField(variable));
+		for (ScoreDoc hit : hits) {
+			if (hit.score >= settings.getMinScore()) {
+				docIds[hitCount++] = hit.doc;
 			}
+		}
 
-			this.boostValueSource = expression.getDoubleValuesSource(bindings);
+		docIds = Arrays.copyOf(docIds, hitCount);
 
-		} catch (final Exception e) {
-			System.err.println("Failed to create boost value source:");
-			System.err.println(e.getMessage());
-			this.boostValueSource = null;
+		// Highlight all hits in one pass on fields that have been indexed with offsets
+		OffsetHighlighter offsetHighlighter = null;
+
+		if (config.isHighlightOffsets() && writer.usesHighlights()) {
+			offsetHighlighter = OffsetHighlighter.highlight(searcher, this.analyzer, highlightQuery, fields,
+					settings.getReturnFields(), docIds);
+		}
+
+		StoredHitVisitor visitor = new StoredHitVisitor(settings.getReturnFields());
+		int hitIndex = 0;
+
+		for (ScoreDoc hit : hits) {
+
+			if (hit.score < settings.getMinScore()) {
+				continue;
+			}
+
+			visitor.reset();
+			storedFields.document(hit.doc, visitor);
+
+			writeDocument(writer, visitor, highlightQuery, fields, hit.score, offsetHighlighter, hitIndex);
+			hitIndex++;
 		}
+
+		writer.endResults();
+		return partial;
 	}
 
 	/**
-	 * Searches the index based on a given query
-	 * 
-	 * @param queryMap Maps a queryfield for a field specific query
-	 * @param maxHits  max number of search results
-	 * @return
+	 * Checks whether the search stopped collecting hits early and counts the reason
 	 */
-	public JSONObject search(QuerySettings settings, Hashtable<LookupField, String> queryMap,
-			String join) {
+	private boolean isPartial(SearchTimeout timeout) {
 
-		LookupField[] fields = new LookupField[queryMap.size()];
-		String[] queries = new String[queryMap.size()];
-
-		int i = 0;
+		if (timeout == null || !(timeout.isExpired() || timeout.isCancelled())) {
+			return false;
+		}
 
-		for (Entry<LookupField, String> entry : queryMap.entrySet()) {
-			fields[i] = entry.getKey();
-			queries[i] = entry.getValue();
-			i++;
+		if (timeout.isCancelled()) {
+			cancelledCount.incrementAndGet();
+		} else {
+			timedOutCount.incrementAndGet();
 		}
 
-		return search(fields, queries, settings, join);
+		return true;
 	}
 
 	/**
-	 * Searches the index based on a given query
+	 * Runs the query and records the parallel execution, if a search executor is used
 	 * 
-	 * @param maxHits The maximum amount of search results
-	 * @return The search results as a string
+	 * @param earlyTermination True to collect the first hits in index sort order, if the
+	 * index is sorted
+	 * @param timeout The timeout of the request or null
+	 * @throws IOException
 	 */
-	public JSONObject search(LookupField[] fields, String[] queries, QuerySettings settings,
-			String join) {
+	private TopDocs search(IndexSearcher searcher, Query query, int maxResults, boolean earlyTermination,
+			SearchTimeout timeout) throws IOException {
 
-		if(this.searcher == null) {
-			return null;
+		if (searchExecutor == null) {
+			return runQuery(searcher, query, maxResults, earlyTermination, timeout);
 		}
 
-		try {
-			if (fields.length != queries.length) {
-				return null;
-			}
+		searchExecutor.startQuery();
 
-			StandardAnalyzer analyzer = new StandardAnalyzer();
+		try {
+			return runQuery(searcher, query, maxResults, earlyTermination, timeout);
+		} finally {
+			searchExecutor.endQuery();
+		}
+	}
 
-			BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+	private TopDocs runQuery(IndexSearcher searcher, Query query, int maxResults, boolean earlyTermination,
+			SearchTimeout timeout) throws IOException {
 
-			for (int i = 0; i < fields.length; i++) {
+		// Same bounds as IndexSearcher.search(Query, int)
+		maxResults = Math.min(maxResults, Math.max(1, searcher.getIndexReader().maxDoc()));
+		Sort indexSort = earlyTermination ? getIndexSort(searcher) : null;
 
-				String field = fields[i].getName();
-				String query = queries[i];
-				boolean required = fields[i].isRequired();
-				boolean allowPartialMatch = fields[i].isAllowPartialMatch();
-				boolean isExact = fields[i].isExact();
+		if (indexSort == null) {
+			return searcher.search(query, TimeoutCollectorManager.wrap(
+					new TopScoreDocCollectorManager(maxResults, null, TOTAL_HITS_THRESHOLD), timeout));
+		}
 
-				// System.out.println("Searching on " + field + "(" + fields[i].getType() + ")");
+		// Sorting by the index sort lets every segment stop collecting after the first
+		// maxResults hits. Only these hits are scored afterwards
+		TopDocs docs = searcher.search(query, TimeoutCollectorManager.wrap(
+				new TopFieldCollectorManager(indexSort, maxResults, null, maxResults), timeout));
+		TopFieldCollector.populateScores(docs.scoreDocs, searcher, query);
+		return docs;
+	}
 
-				if(Constants.CONFIG_FIELD_TYPE_NUMERIC.equals(fields[i].getType())) {
-					
-					// System.out.println("Field is numeric.");
-					
-					if(query.contains(",")) {
+	/**
+	 * @return The sort of the index segments or null, if the index is not sorted
+	 */
+	private Sort getIndexSort(IndexSearcher searcher) {
 
-						// System.out.println("Might be a range query");
-					
-						String[] conditionStrings = query.split(",");
+		List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
 
-						if(conditionStrings.length != 2) {
-							continue;
-						}
+		if (leaves.isEmpty()) {
+			return null;
+		}
 
-						int lowerBound = parseIntWithFallback(conditionStrings[0], Integer.MIN_VALUE);
-						int upperBound = parseIntWithFallback(conditionStrings[1], Integer.MAX_VALUE);
+		return leaves.get(0).reader().getMetaData().getSort();
+	}
 
-						Query rangeQuery = LongPoint.newRangeQuery(field, lowerBound, upperBound);
-						// System.out.println("Adding range query with range: " + lowerBound + "," + upperBound);
-						
-						queryBuilder.add(rangeQuery, Occur.MUST);
-					}
+	/**
+	 * Counts the hits of the query and records the parallel execution, if a search
+	 * executor is used
+	 * 
+	 * @param timeout The timeout of the request or null
+	 * @throws IOException
+	 */
+	private int count(IndexSearcher searcher, Query query, SearchTimeout timeout) throws IOException {
 
-					continue;					
-				}
+		if (searchExecutor == null) {
+			return runCount(searcher, query, timeout);
+		}
 
-				List<String> tokens;
+		searchExecutor.startQuery();
 
-				if (fields[i].tokenize()) {
+		try {
+			return runCount(searcher, query, timeout);
+		} finally {
+			searchExecutor.endQuery();
+		}
+	}
 
-					if(isExact) {
-						
-						tokens = new ArrayList<String>();
-						String[] exactTokens = query.split(" ");
-						
-						for(int t = 0; t < exactTokens.length; t++) {
-							tokens.add(exactTokens[t]);
-						}
-					}
-					else {
-						tokens = analyze(query, analyzer);
-					}
+	private int runCount(IndexSearcher searcher, Query query, SearchTimeout timeout) throws IOException {
 
-				} else {
-					tokens = new ArrayList<String>();
+		if (timeout == null) {
+			return searcher.count(query);
+		}
 
-					if (isExact) {
-						tokens.add(query);
-					} else {
-						tokens.add(query.toLowerCase());
-					}
-				}
+		return searcher.search(query, TimeoutCollectorManager.wrap(new TotalHitCountCollectorManager(), timeout));
+	}
 
-				BooleanQuery.Builder tokenQueryBuilder = new BooleanQuery.Builder();
+	/**
+	 * Returns runtime statistics of the searcher, such as the result cache counters
+	 * 
+	 * @return The statistics as a JSON object
+	 */
+	public JSONObject getStatistics() {
 
-				for (String token : tokens) {
+		JSONObject statistics = new JSONObject();
+		statistics.put("timedOut", timedOutCount.get());
+		statistics.put("cancelled", cancelledCount.get());
 
-					Query boostQuery = new BoostQuery(createQueryFromToken(field, fields[i].isExact(),
-							token, settings), fields[i].getWeight());
+		JSONObject stageStatistics = new JSONObject();
 
-					tokenQueryBuilder = tokenQueryBuilder.add(boostQuery,
-							allowPartialMatch ? Occur.SHOULD : Occur.MUST);
-				}
+		for (int i = 0; i < STAGE_NAMES.length; i++) {
+			stageStatistics.put(STAGE_NAMES[i], stageCounts[i].get());
+		}
 
-				queryBuilder = queryBuilder.add(tokenQueryBuilder.build(), required ? Occur.MUST : Occur.SHOULD);
-			}
+		statistics.put("stagedQueries", stageStatistics);
 
-			analyzer.close();
+		// Terms are counted per segment the fuzzy queries have been expanded on
+		JSONObject fuzzyStatistics = new JSONObject();
+		long fuzzySearches = fuzzySearchCount.get();
+		long fuzzyTerms = fuzzyTermCount.sum();
 
-			Query query = queryBuilder.build();
+		fuzzyStatistics.put("searches", fuzzySearches);
+		fuzzyStatistics.put("expandedTerms", fuzzyTerms);
+		fuzzyStatistics.put("expandedTermsPerSearch", fuzzySearches > 0 ? (double) fuzzyTerms / fuzzySearches : 0);
+		statistics.put("fuzzy", fuzzyStatistics);
 
-			if (boostValueSource != null) {
-				query = FunctionScoreQuery.boostByValue(query, boostValueSource);
-			}
-			
-			TopDocs joinDocs = null;
+		if (resultCache != null) {
+			statistics.put("resultCache", resultCache.getStatistics());
+		}
 
-			if (join != null) {
+		statistics.put("queryCache", searcherFactory.getQueryCacheStatistics());
 
-				joinDocs = this.searcher.search(query, 10000);
-				
+		if (searchExecutor != null) {
+			statistics.put("searchExecutor", searchExecutor.getStatistics());
+		}
 
-				query = JoinUtil.createJoinQuery(FIELD_DOCUMENT_ID, true, join,
-					query, this.searcher, ScoreMode.None);
+		return statistics;
+	}
 
-				System.out.println(query);
-			}
+	private void release(SearcherManager manager, IndexSearcher searcher) {
 
-			return getReturnResults(fields, settings, query, join, joinDocs);
+		if (searcher == null) {
+			return;
+		}
 
+		try {
+			manager.release(searcher);
 		} catch (IOException e) {
-
-			System.out.println("querying went wrong");
 			e.printStackTrace();
 		}
-
-		return null;
 	}
 
-	private JSONObject getReturnResults(LookupField[] fields, QuerySettings settings, Query query, String join, TopDocs joinDocs) throws IOException {
-		ArrayList<ScoredDocument> documents = runQuery(query, settings.getMaxResult());
-		JSONArray documentArray = new JSONArray();
-		HashMap<String, Float> joinScoreMap = null;
+	/**
+	 * Maps the ids of the documents matched before the join to their scores
+	 * 
+	 * @param searcher
+	 * @param joinDocs The hits of the query before the join
+	 * @return The id-score map
+	 * @throws IOException
+	 */
+	private HashMap<String, Float> createJoinScoreMap(IndexSearcher searcher, TopDocs joinDocs) throws IOException {
 
-		if(join != null) {
-			joinScoreMap = new HashMap<>();
-			StoredFields storedFields = searcher.storedFields();
-			ScoreDoc[] hits = joinDocs.scoreDocs;
-	
-			for (int i = 0; i < hits.length; i++) {
-	
-				int docId = hits[i].doc;
-				Document document = storedFields.document(docId);
-				IndexableField field = document.getField(FIELD_DOCUMENT_ID);
-	
-				if(field == null) {
-					continue;
-				}
-	
-				// System.out.println("Adding to score map: " + field.stringValue() + ", score: " + hits[i].score);
-				joinScoreMap.put(field.stringValue(), hits[i].score);
-			}
-		}
+		HashMap<String, Float> joinScoreMap = new HashMap<>();
+		StoredFields storedFields = searcher.storedFields();
+		ScoreDoc[] hits = joinDocs.scoreDocs;
 
-		for (ScoredDocument document : documents) {
+		for (int i = 0; i < hits.length; i++) {
 
-			if(join != null) {
+			Document document = storedFields.document(hits[i].doc, FIELD_DOCUMENT_ID_SET);
+			IndexableField field = document.getField(FIELD_DOCUMENT_ID);
 
-				float score = 0;
-				IndexableField[] joinFields = document.getDocument().getFields(join);
+			if(field == null) {
+				continue;
+			}
 
-				for(IndexableField joinField : joinFields) {
-					String value = joinField.stringValue();
+			joinScoreMap.put(field.stringValue(), hits[i].score);
+		}
 
-					if(joinScoreMap.containsKey(value)) {
-						score += joinScoreMap.get(value);
-					}
-				}
+		return joinScoreMap;
+	}
 
-				// System.out.println("Set joined score to " + score);
-				document.setScore(score);
-			}
-		}
+	/**
+	 * Sets the score of each joined hit to the sum of the scores of the documents it
+	 * joins to and sorts the hits by their new score
+	 * 
+	 * @throws IOException
+	 */
+	private void rescoreJoinHits(StoredFields storedFields, ScoreDoc[] hits, String join,
+			HashMap<String, Float> joinScoreMap) throws IOException {
 
-		documents.sort(new ScoreDocumentComparator());
+		Set<String> joinFieldSet = Collections.singleton(join);
 
-		for (ScoredDocument document : documents) {
+		for (ScoreDoc hit : hits) {
 
-			if (document.getScore() < settings.getMinScore()) {
-				continue;
-			}
+			float score = 0;
+			IndexableField[] joinFields = storedFields.document(hit.doc, joinFieldSet).getFields(join);
 
-			ArrayList<Object> scoreList = new ArrayList<Object>();
-			scoreList.add("" + document.getScore());
+			for(IndexableField joinField : joinFields) {
+				String value = joinField.stringValue();
 
-			HashMap<String, ArrayList<Object>> documentMap = parseResult(query, fields,
-					document.getDocument(), settings.getFormat());
+				if(joinScoreMap.containsKey(value)) {
+					score += joinScoreMap.get(value);
+				}
+			}
 
-			documentMap.put("score", scoreList);
-			documentArray.put(documentMap);
+			hit.score = score;
 		}
 
-		JSONObject returnResults = new JSONObject();
-		returnResults.put(settings.getFormat().equalsIgnoreCase(LookupConfig.CONFIG_FIELD_FORMAT_XML) ? FIELD_RESULT
-				: FIELD_DOCUMENTS, documentArray);
-
-		return returnResults;
+		Arrays.sort(hits, new ScoreDocComparator());
 	}
 
 	/**
@@ -393,36 +1347,30 @@ public class LookupSearcher {
 	 * Exact matches are weighted much higher then prefix or fuzzy matches.
 	 * The weights can be adjusted via the config file
 	 * 
-	 * @param field
+	 * @param lookupField
 	 * @param token
+	 * @param forHighlighting True to match prefixes on the field instead of its n-gram sub-field
+	 * @param stage The widest match type to include, prefix and fuzzy matches are left out
+	 * in the earlier stages of a staged query
 	 * @return
 	 * @throws IOException
 	 */
-	private Query createQueryFromToken(String field, boolean isExact, String token, QuerySettings settings)
-			throws IOException {
+	private Query createQueryFromToken(LookupField lookupField, String token, QuerySettings settings,
+			boolean forHighlighting, int stage) throws IOException {
+
+		String field = lookupField.getName();
 
-		if (isExact) {
+		if (lookupField.isExact()) {
 			return new BoostQuery(new TermQuery(new Term(field, token)), settings.getExactMatchBoost());
 		}
 
 		Term term = new Term(field, token);
-
-		Query prefixQuery = new BoostQuery(new PrefixQuery(term), settings.getPrefixMatchBoost());
-		Query fuzzyQuery = new BoostQuery(
-				new FuzzyQuery(term, settings.getFuzzyEditDistance(), settings.getFuzzyPrefixLength()),
-				settings.getFuzzyMatchBoost());
 		Query termQuery = new BoostQuery(new TermQuery(term), settings.getExactMatchBoost());
 
 		BooleanQuery.Builder builder = new BooleanQuery.Builder();
 		builder.setMinimumNumberShouldMatch(1);
 
-		if (settings.getPrefixMatchBoost() > 0) {
-			builder.add(prefixQuery, Occur.SHOULD);
-		}
-
-		if (settings.getFuzzyMatchBoost() > 0) {
-			builder.add(fuzzyQuery, Occur.SHOULD);
-		}
+		addExpansionClauses(builder, lookupField, term, settings, forHighlighting, stage);
 
 		if (settings.getExactMatchBoost() > 0) {
 			builder.add(termQuery, Occur.SHOULD);
@@ -431,119 +1379,160 @@ public class LookupSearcher {
 		return builder.build();
 	}
 
-	private List<String> analyze(String text, Analyzer analyzer) throws IOException {
-		List<String> result = new ArrayList<String>();
-		TokenStream tokenStream = analyzer.tokenStream(null, text);
-		CharTermAttribute attr = tokenStream.addAttribute(CharTermAttribute.class);
-		tokenStream.reset();
-		while (tokenStream.incrementToken()) {
-			result.add(attr.toString());
-		}
-		tokenStream.close();
-		return result;
-	}
-
 	/**
-	 * Runs a query and returns the results as a list of documents
+	 * Adds the prefix and fuzzy clauses of a token to a query
 	 * 
-	 * @param query
-	 * @param maxResults
-	 * @return
+	 * @param builder The query builder
+	 * @param lookupField The queried field
+	 * @param term The token on the queried field
+	 * @param forHighlighting True to match prefixes on the field instead of its n-gram sub-field
+	 * @param stage The widest match type to include
 	 * @throws IOException
-	 * @throws InvalidTokenOffsetsException
 	 */
-	private ArrayList<ScoredDocument> runQuery(Query query, int maxResults) throws IOException {
+	private void addExpansionClauses(BooleanQuery.Builder builder, LookupField lookupField, Term term,
+			QuerySettings settings, boolean forHighlighting, int stage) throws IOException {
 
-		ArrayList<ScoredDocument> resultList = new ArrayList<ScoredDocument>();
+		String token = term.text();
 
-		if (maxResults == 0) {
-			
-			int hitCount = searcher.count(query);
+		if (settings.getPrefixMatchBoost() > 0 && stage >= STAGE_PREFIX) {
+			Query prefixQuery = new BoostQuery(forHighlighting ? createPrefixQuery(term)
+					: createPrefixQuery(lookupField, token), settings.getPrefixMatchBoost());
+			builder.add(prefixQuery, Occur.SHOULD);
+		}
 
-			ScoredDocument scoredDocument = new ScoredDocument();
+		// Tokens too short for an edit only match themselves, which is cheap
+		int fuzzyEditDistance = settings.getFuzzyEditDistance(token);
 
-			Document document = new Document();
-			document.add(new StoredField(FIELD_COUNT, "" + hitCount));
+		if (settings.getFuzzyMatchBoost() > 0 && stage >= STAGE_FUZZY) {
 
-			scoredDocument.setDocument(document);
-			scoredDocument.setScore(1);
+			int maxExpansions = settings.getFuzzyMaxExpansions() > 0 ? settings.getFuzzyMaxExpansions()
+					: getMaxExpansions(FuzzyQuery.defaultMaxExpansions);
 
-			resultList.add(scoredDocument);
-			return resultList;
+			Query fuzzyQuery = new BoostQuery(
+					new AdaptiveFuzzyQuery(term, fuzzyEditDistance, settings.getFuzzyPrefixLength(),
+							maxExpansions, settings.getFuzzyMinDocFreq(), forHighlighting ? null : fuzzyTermCount),
+					settings.getFuzzyMatchBoost());
+			builder.add(fuzzyQuery, Occur.SHOULD);
 		}
+	}
 
-		TopDocs docs = searcher.search(query, maxResults);
-		StoredFields storedFields = searcher.storedFields();
-		ScoreDoc[] hits = docs.scoreDocs;
+	/**
+	 * Creates a constant score prefix query. If query expansions are capped, only the
+	 * terms starting with the prefix that are found in the most documents are expanded
+	 */
+	private Query createPrefixQuery(Term term) {
 
-		for (int i = 0; i < hits.length; i++) {
+		if (config.getMaxQueryExpansions() <= 0) {
+			return new PrefixQuery(term);
+		}
+
+		return new ConstantScoreQuery(new FrequentPrefixQuery(term, config.getMaxQueryExpansions()));
+	}
+
+	/**
+	 * Creates a prefix query for a field. Tokens that fit into the edge n-grams of the
+	 * prefix sub-field of the field are matched by a single term lookup on the sub-field,
+	 * longer tokens fall back to a prefix query on the field
+	 */
+	private Query createPrefixQuery(LookupField lookupField, String token) {
+
+		int gramLength = lookupField.getPrefixGramLength();
+
+		if (gramLength > 0 && token.codePointCount(0, token.length()) <= gramLength) {
+			return new ConstantScoreQuery(new TermQuery(new Term(lookupField.getPrefixFieldName(), token)));
+		}
+
+		return createPrefixQuery(new Term(lookupField.getName(), token));
+	}
 
-			int docId = hits[i].doc;
-			// System.out.println(searcher.explain(query, docId));
+	private int getMaxExpansions(int defaultMaxExpansions) {
+		return config.getMaxQueryExpansions() > 0 ? config.getMaxQueryExpansions() : defaultMaxExpansions;
+	}
 
-			Document document = storedFields.document(docId);
+	/**
+	 * Analyzes the query input with the analyzer of the field. The token streams of the
+	 * shared analyzer are reused per thread and field
+	 */
+	private List<String> analyze(String field, String text) throws IOException {
+		List<String> result = new ArrayList<String>();
 
-			ScoredDocument scoredDocument = new ScoredDocument();
-			scoredDocument.setDocument(document);
-			scoredDocument.setScore(hits[i].score);
-			resultList.add(scoredDocument);
+		// A reused token stream has to be closed, even if the analysis fails
+		try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+			CharTermAttribute attr = tokenStream.addAttribute(CharTermAttribute.class);
+			tokenStream.reset();
+			while (tokenStream.incrementToken()) {
+				result.add(attr.toString());
+			}
+			tokenStream.end();
 		}
 
-		return resultList;
+		return result;
 	}
 
 	/**
-	 * Creates a string-value map from a document and tries to highlight the query
-	 * using the query and search fields used to retrieve the document
+	 * Passes the stored fields of a hit to the result writer and tries to highlight the
+	 * query using the query and search fields used to retrieve the document. Highlights
+	 * of the offset highlighter are used where available, all other highlight fields
+	 * are highlighted by re-analyzing the field values
 	 * 
-	 * @param document The document
-	 * @return The string-value map
+	 * @param writer The result writer
+	 * @param visitor The visitor holding the stored fields of the hit
+	 * @param offsetHighlighter The offset highlighter or null
+	 * @param hitIndex The index of the hit in the offset highlighter
 	 * @throws IOException
 	 */
-	private HashMap<String, ArrayList<Object>> parseResult(Query query, LookupField[] fields, Document document,
-			String fieldFormat) {
-
-		HashMap<String, ArrayList<Object>> documentMap = new HashMap<String, ArrayList<Object>>();
+	private void writeDocument(ResultWriter writer, StoredHitVisitor visitor, Query query, LookupField[] fields,
+			float score, OffsetHighlighter offsetHighlighter, int hitIndex) throws IOException {
 
-		for (IndexableField f : document.getFields()) {
+		writer.startDocument();
 
-			if (!documentMap.containsKey(f.name())) {
-				documentMap.put(f.name(), new ArrayList<Object>());
-			}
+		for (Entry<String, List<String>> field : visitor.getFieldValues().entrySet()) {
 
-			String value = f.stringValue();
-			String name = f.name();
+			String name = field.getKey();
+			List<String> values = field.getValue();
+			boolean highlight = writer.usesHighlights() && isHighlightField(fields, name);
+			String[] offsetHighlights = null;
 
-			JSONObject jsonValue = new JSONObject();
-			jsonValue.put(FIELD_VALUE, value);
+			if (highlight && offsetHighlighter != null && offsetHighlighter.isHighlighted(name)) {
+				offsetHighlights = offsetHighlighter.getValues(name, hitIndex, values.size());
+			}
 
-			// Highlight the document field, if the field is one of the search fields
-			for (LookupField field : fields) {
+			writer.startField(name);
 
-				if (name.equals(field.getName()) && field.isHighlight()) {
+			for (int valueIndex = 0; valueIndex < values.size(); valueIndex++) {
 
-					String highlightValue = highlightField(query, name, value);
+				String value = values.get(valueIndex);
+				String highlightValue = null;
 
-					if (highlightValue != null && fieldFormat.equalsIgnoreCase(LookupConfig.CONFIG_FIELD_FORMAT_JSON)) {
-						value = highlightValue;
-					}
+				if (offsetHighlights != null) {
+					highlightValue = offsetHighlights[valueIndex];
+				} else if (highlight) {
+					highlightValue = highlightField(query, name, value);
 
-					if (fieldFormat.equalsIgnoreCase(LookupConfig.CONFIG_FIELD_FORMAT_JSON_FULL)) {
-						jsonValue.put(FIELD_HIGHLIGHT, highlightValue != null ? highlightValue : value);
+					if (highlightValue == null) {
+						highlightValue = value;
 					}
-
-					break;
 				}
+
+				writer.writeValue(value, highlightValue);
 			}
 
-			if (fieldFormat.equalsIgnoreCase(LookupConfig.CONFIG_FIELD_FORMAT_JSON_FULL)) {
-				documentMap.get(f.name()).add(jsonValue);
-			} else {
-				documentMap.get(f.name()).add(value);
+			writer.endField();
+		}
+
+		writer.writeScore(score);
+		writer.endDocument();
+	}
+
+	private boolean isHighlightField(LookupField[] fields, String name) {
+
+		for (LookupField field : fields) {
+			if (name.equals(field.getName()) && field.isHighlight()) {
+				return true;
 			}
 		}
 
-		return documentMap;
+		return false;
 	}
 
 	private String highlightField(Query query, String name, String value) {
@@ -573,9 +1562,27 @@ public class LookupSearcher {
 		}
 	}
 
-	public void close() {
+	public synchronized void close() {
 		try {
-			reader.close();
+			if (reopenThread != null) {
+				reopenThread.close();
+				reopenThread = null;
+			}
+
+			if (searcherManager != null) {
+				searcherManager.close();
+				searcherManager = null;
+			}
+
+			if (directory != null) {
+				directory.close();
+				directory = null;
+			}
+
+			if (searchExecutor != null) {
+				searchExecutor.shutdown();
+				searchExecutor = null;
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -592,33 +1599,11 @@ public class LookupSearcher {
 		return result;
 	}
 
-	public static class ScoredDocument {
-		private Document document;
-
-		private float score;
-
-		public Document getDocument() {
-			return document;
-		}
-
-		public void setDocument(Document document) {
-			this.document = document;
-		}
-
-		public float getScore() {
-			return score;
-		}
-
-		public void setScore(float score) {
-			this.score = score;
-		}
-	}
-
-	public class ScoreDocumentComparator implements Comparator<ScoredDocument> {
+	public static class ScoreDocComparator implements Comparator<ScoreDoc> {
 		@Override
-		public int compare(ScoredDocument doc1, ScoredDocument doc2) {
+		public int compare(ScoreDoc doc1, ScoreDoc doc2) {
 			// Compare scores in descending order
-			return Float.compare(doc2.getScore(), doc1.getScore());
+			return Float.compare(doc2.score, doc1.score);
 		}
 	}
 }
@@ -0,0 +1,160 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+import org.apache.lucene.search.Weight;
+import org.dbpedia.lookup.config.LookupConfig;
+import org.json.JSONObject;
+
+/**
+ * Creates the index searchers for the searcher manager. If a search executor is
+ * passed, the searchers search their segment slices in parallel using the configured
+ * slice policy. All searchers share one query cache for the filter clauses
+ */
+public class LookupSearcherFactory extends SearcherFactory {
+
+	public static final String QUERY_CACHE_POLICY_ALWAYS = "always";
+
+	private static final int DEFAULT_SLICE_MAX_DOCS = 250000;
+
+	private static final int DEFAULT_SLICE_MAX_SEGMENTS = 5;
+
+	private static final int DEFAULT_QUERY_CACHE_RAM_MB = 32;
+
+	private static final int DEFAULT_QUERY_CACHE_MIN_SEGMENT_DOCS = 10000;
+
+	private static final float QUERY_CACHE_SKIP_FACTOR = 10f;
+
+	private final SearchExecutor executor;
+
+	private final int sliceMaxDocs;
+
+	private final int sliceMaxSegments;
+
+	private final QueryCache queryCache;
+
+	private final QueryCachingPolicy queryCachingPolicy;
+
+	public LookupSearcherFactory(LookupConfig config, SearchExecutor executor) {
+		this.executor = executor;
+		this.sliceMaxDocs = config.getSearchSliceMaxDocs() > 0 ? config.getSearchSliceMaxDocs()
+				: DEFAULT_SLICE_MAX_DOCS;
+		this.sliceMaxSegments = config.getSearchSliceMaxSegments() > 0 ? config.getSearchSliceMaxSegments()
+				: DEFAULT_SLICE_MAX_SEGMENTS;
+		this.queryCache = createQueryCache(config);
+		this.queryCachingPolicy = createQueryCachingPolicy(config);
+	}
+
+	@Override
+	public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+
+		IndexSearcher searcher;
+
+		if (executor == null) {
+			searcher = new IndexSearcher(reader);
+		} else {
+			searcher = new IndexSearcher(reader, executor) {
+
+				@Override
+				protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+					return slices(leaves, sliceMaxDocs, sliceMaxSegments);
+				}
+
+				@Override
+				protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector)
+						throws IOException {
+
+					// Called for every slice, on a search thread or on the calling thread
+					long start = System.nanoTime();
+
+					try {
+						super.search(leaves, weight, collector);
+					} finally {
+						executor.endSlice(System.nanoTime() - start);
+					}
+				}
+			};
+		}
+
+		searcher.setQueryCache(queryCache);
+		searcher.setQueryCachingPolicy(queryCachingPolicy);
+		return searcher;
+	}
+
+	/**
+	 * @return The hit, miss and size statistics of the query cache
+	 */
+	public JSONObject getQueryCacheStatistics() {
+
+		JSONObject statistics = new JSONObject();
+
+		if (!(queryCache instanceof LRUQueryCache)) {
+			return statistics;
+		}
+
+		LRUQueryCache cache = (LRUQueryCache) queryCache;
+		long lookups = cache.getHitCount() + cache.getMissCount();
+
+		statistics.put("hits", cache.getHitCount());
+		statistics.put("misses", cache.getMissCount());
+		statistics.put("hitRatio", lookups > 0 ? (double) cache.getHitCount() / lookups : 0);
+		statistics.put("cachedQueries", cache.getCacheCount());
+		statistics.put("size", cache.getCacheSize());
+		statistics.put("evictions", cache.getEvictionCount());
+		statistics.put("ramBytesUsed", cache.ramBytesUsed());
+		return statistics;
+	}
+
+	/**
+	 * Creates the query cache. Without a configured size, the default cache of Lucene is used
+	 */
+	private static QueryCache createQueryCache(LookupConfig config) {
+
+		if (config.getQueryCacheSize() <= 0) {
+			return IndexSearcher.getDefaultQueryCache();
+		}
+
+		long maxRamBytes = (config.getQueryCacheRamMB() > 0 ? config.getQueryCacheRamMB()
+				: DEFAULT_QUERY_CACHE_RAM_MB) * 1024L * 1024L;
+
+		final int minSegmentDocs = config.getQueryCacheMinSegmentDocs() > 0 ? config.getQueryCacheMinSegmentDocs()
+				: DEFAULT_QUERY_CACHE_MIN_SEGMENT_DOCS;
+
+		return new LRUQueryCache(config.getQueryCacheSize(), maxRamBytes,
+				context -> context.reader().maxDoc() >= minSegmentDocs, QUERY_CACHE_SKIP_FACTOR);
+	}
+
+	/**
+	 * Creates the caching policy. The default policy caches filters once they have been
+	 * used a few times and never caches single term filters
+	 */
+	private static QueryCachingPolicy createQueryCachingPolicy(LookupConfig config) {
+
+		if (!QUERY_CACHE_POLICY_ALWAYS.equalsIgnoreCase(config.getQueryCachePolicy())) {
+			return new UsageTrackingQueryCachingPolicy();
+		}
+
+		return new QueryCachingPolicy() {
+
+			@Override
+			public void onUse(Query query) {
+			}
+
+			@Override
+			public boolean shouldCache(Query query) throws IOException {
+				return true;
+			}
+		};
+	}
+}
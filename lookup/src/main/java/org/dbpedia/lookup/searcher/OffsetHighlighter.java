@@ -0,0 +1,142 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.search.uhighlight.WholeBreakIterator;
+import org.dbpedia.lookup.config.LookupField;
+
+/**
+ * Highlights all hits of a search in one pass with the UnifiedHighlighter, using the
+ * offsets stored in the postings instead of re-analyzing each field value. The values
+ * of a field are highlighted as a whole and split back into the single values
+ */
+public class OffsetHighlighter {
+
+	private static final String PRE_TAG = "<B>";
+
+	private static final String POST_TAG = "</B>";
+
+	/**
+	 * The UnifiedHighlighter joins the values of multi-valued fields with this character
+	 */
+	private static final String VALUE_SEPARATOR = "\u0000";
+
+	private final String[] fieldNames;
+
+	private final Map<String, String[]> highlights;
+
+	private OffsetHighlighter(String[] fieldNames, Map<String, String[]> highlights) {
+		this.fieldNames = fieldNames;
+		this.highlights = highlights;
+	}
+
+	/**
+	 * Highlights the highlight fields of the passed documents. Only fields that have been
+	 * indexed with offsets and are returned with the result are highlighted
+	 * 
+	 * @param searcher The searcher
+	 * @param analyzer The index analyzer
+	 * @param query The search query
+	 * @param fields The query fields
+	 * @param returnFields The returned fields or null, if all fields are returned
+	 * @param docIds The document ids of the hits
+	 * @return The highlights
+	 * @throws IOException
+	 */
+	public static OffsetHighlighter highlight(IndexSearcher searcher, Analyzer analyzer, Query query,
+			LookupField[] fields, Set<String> returnFields, int[] docIds) throws IOException {
+
+		FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(searcher.getIndexReader());
+		List<String> fieldNames = new ArrayList<String>();
+
+		for (LookupField field : fields) {
+
+			if (!field.isHighlight() || fieldNames.contains(field.getName())) {
+				continue;
+			}
+
+			if (returnFields != null && !returnFields.contains(field.getName())) {
+				continue;
+			}
+
+			FieldInfo fieldInfo = fieldInfos.fieldInfo(field.getName());
+
+			if (fieldInfo == null
+					|| fieldInfo.getIndexOptions() != IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) {
+				continue;
+			}
+
+			fieldNames.add(field.getName());
+		}
+
+		if (fieldNames.isEmpty() || docIds.length == 0) {
+			return new OffsetHighlighter(new String[0], Collections.emptyMap());
+		}
+
+		UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, analyzer)
+				.withBreakIterator(WholeBreakIterator::new)
+				.withFormatter(new DefaultPassageFormatter(PRE_TAG, POST_TAG, "", false))
+				.withMaxLength(Integer.MAX_VALUE - 1)
+				.build();
+
+		String[] fieldNameArray = fieldNames.toArray(new String[fieldNames.size()]);
+		int[] maxPassages = new int[fieldNameArray.length];
+
+		for (int i = 0; i < maxPassages.length; i++) {
+			maxPassages[i] = 1;
+		}
+
+		return new OffsetHighlighter(fieldNameArray,
+				highlighter.highlightFields(fieldNameArray, query, docIds, maxPassages));
+	}
+
+	/**
+	 * Checks whether the field has been highlighted by this highlighter
+	 * 
+	 * @param field The field name
+	 * @return
+	 */
+	public boolean isHighlighted(String field) {
+
+		for (String fieldName : fieldNames) {
+			if (fieldName.equals(field)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the highlighted values of a field of a hit
+	 * 
+	 * @param field The field name
+	 * @param hitIndex The index of the hit in the document id array
+	 * @param valueCount The expected number of values
+	 * @return The highlighted values or null, if the field has not been highlighted
+	 */
+	public String[] getValues(String field, int hitIndex, int valueCount) {
+
+		String[] fieldHighlights = highlights.get(field);
+
+		if (fieldHighlights == null || fieldHighlights[hitIndex] == null) {
+			return null;
+		}
+
+		String[] values = fieldHighlights[hitIndex].split(VALUE_SEPARATOR, -1);
+		return values.length == valueCount ? values : null;
+	}
+}
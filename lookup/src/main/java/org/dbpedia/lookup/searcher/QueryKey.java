@@ -0,0 +1,68 @@
+package org.dbpedia.lookup.searcher;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Map.Entry;
+
+import org.dbpedia.lookup.config.CacheKeyBuilder;
+import org.dbpedia.lookup.config.LookupField;
+import org.dbpedia.lookup.config.QuerySettings;
+
+/**
+ * Creates normalized keys for searches. Two searches with the same key produce
+ * the same result on the same index reader.
+ */
+public class QueryKey {
+
+	/**
+	 * Creates the key for a search. The query fields are sorted by name, so the
+	 * key does not depend on the order of the query map
+	 *
+	 * @return The search key
+	 */
+	public static String create(LookupField[] fields, String[] queries, QuerySettings settings, String join) {
+
+		Integer[] order = new Integer[fields.length];
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		Arrays.sort(order, Comparator.comparing((Integer i) -> fields[i].getName(),
+				Comparator.nullsFirst(Comparator.naturalOrder())));
+
+		// Nested keys and user input are length-prefixed, so no input can forge another key
+		CacheKeyBuilder key = new CacheKeyBuilder();
+		key.add("settings", settings.getCacheKey());
+		key.add("join", join);
+
+		for (int i : order) {
+			key.add("field", fields[i].getCacheKey());
+			key.add("query", queries[i]);
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Creates the key for a search from a query map
+	 *
+	 * @return The search key
+	 */
+	public static String create(Hashtable<LookupField, String> queryMap, QuerySettings settings, String join) {
+
+		LookupField[] fields = new LookupField[queryMap.size()];
+		String[] queries = new String[queryMap.size()];
+
+		int i = 0;
+
+		for (Entry<LookupField, String> entry : queryMap.entrySet()) {
+			fields[i] = entry.getKey();
+			queries[i] = entry.getValue();
+			i++;
+		}
+
+		return create(fields, queries, settings, join);
+	}
+}
@@ -0,0 +1,125 @@
+package org.dbpedia.lookup.searcher;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Bounded LRU cache for search results. Cached results are bound to the reader
+ * generation they were computed on. As soon as a search runs on a newer
+ * generation, all cached results are dropped.
+ */
+public class QueryResultCache<V> {
+
+	private final int maxSize;
+
+	private final LinkedHashMap<String, V> entries;
+
+	private long generation = -1;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long evictionCount;
+
+	private long invalidationCount;
+
+	/**
+	 * Creates a new result cache
+	 *
+	 * @param maxSize The maximum number of cached results
+	 */
+	public QueryResultCache(int maxSize) {
+
+		this.maxSize = maxSize;
+
+		// Access ordered linked hash map, the eldest entry is the least recently used one
+		this.entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+
+				if (size() > QueryResultCache.this.maxSize) {
+					evictionCount++;
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cached result or null on a cache miss
+	 *
+	 * @param key The cache key
+	 * @param generation The generation of the reader the search runs on
+	 * @return The cached result
+	 */
+	public synchronized V get(String key, long generation) {
+
+		updateGeneration(generation);
+
+		V result = entries.get(key);
+
+		if (result == null) {
+			missCount++;
+		} else {
+			hitCount++;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Adds a result to the cache. Results computed on an outdated reader are ignored
+	 *
+	 * @param key The cache key
+	 * @param generation The generation of the reader the result was computed on
+	 * @param result The result
+	 */
+	public synchronized void put(String key, long generation, V result) {
+
+		if (generation < this.generation) {
+			return;
+		}
+
+		updateGeneration(generation);
+		entries.put(key, result);
+	}
+
+	/**
+	 * Returns the cache counters
+	 *
+	 * @return The counters as a JSON object
+	 */
+	public synchronized JSONObject getStatistics() {
+
+		JSONObject statistics = new JSONObject();
+		statistics.put("size", entries.size());
+		statistics.put("maxSize", maxSize);
+		statistics.put("hits", hitCount);
+		statistics.put("misses", missCount);
+		statistics.put("evictions", evictionCount);
+		statistics.put("invalidations", invalidationCount);
+		statistics.put("generation", generation);
+		return statistics;
+	}
+
+	private void updateGeneration(long generation) {
+
+		if (generation > this.generation) {
+
+			if (!entries.isEmpty()) {
+				invalidationCount++;
+			}
+
+			entries.clear();
+			this.generation = generation;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+
+/**
+ * Receives the search results hit by hit and serializes them into a response format.
+ * Fields are reported with all their values at once, each value with an optional
+ * highlighted version
+ */
+public interface ResultWriter {
+
+	/**
+	 * @return True if the writer makes use of highlighted field values
+	 */
+	boolean usesHighlights();
+
+	/**
+	 * Starts the result list
+	 * 
+	 * @param partial True if the search was stopped early and the results may be incomplete
+	 * @throws IOException
+	 */
+	void startResults(boolean partial) throws IOException;
+
+	void startDocument() throws IOException;
+
+	void startField(String name) throws IOException;
+
+	/**
+	 * Writes a field value
+	 * 
+	 * @param value The stored value
+	 * @param highlight The highlighted value or null, if the field is not highlighted
+	 * @throws IOException
+	 */
+	void writeValue(String value, String highlight) throws IOException;
+
+	void endField() throws IOException;
+
+	void writeScore(float score) throws IOException;
+
+	void endDocument() throws IOException;
+
+	void endResults() throws IOException;
+}
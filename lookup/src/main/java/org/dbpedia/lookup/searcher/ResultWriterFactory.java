@@ -0,0 +1,12 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Creates a result writer that serializes search results to an output stream
+ */
+public interface ResultWriterFactory {
+
+	ResultWriter create(OutputStream out) throws IOException;
+}
@@ -0,0 +1,182 @@
+package org.dbpedia.lookup.searcher;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Bounded executor used by the index searcher to search segment slices in parallel.
+ * Measures the time spent searching slices per query and compares it to the wall time
+ * of the query, which shows how much a query benefits from the parallel execution.
+ * Slices are timed by the index searcher, no matter whether they run on a search thread
+ * or on the calling thread
+ */
+public class SearchExecutor implements Executor {
+
+	private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+	private final ThreadPoolExecutor pool;
+
+	private final ThreadLocal<QueryStatistics> currentQuery;
+
+	private final AtomicLong queryCount;
+
+	private final AtomicLong parallelQueryCount;
+
+	private final AtomicLong sliceCount;
+
+	private final AtomicLong totalSliceNanos;
+
+	private final AtomicLong totalWallNanos;
+
+	/**
+	 * Creates a new search executor
+	 * 
+	 * @param threadCount The number of search threads
+	 */
+	public SearchExecutor(int threadCount) {
+
+		AtomicInteger threadNumber = new AtomicInteger();
+
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "Lookup Search Thread " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		// Slices are run on the calling thread once the queue is full. After a shutdown
+		// the slice is rejected, so the search fails instead of waiting for a dropped slice
+		this.pool = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threadCount * QUEUE_SIZE_PER_THREAD), threadFactory,
+				(task, executor) -> {
+					if (executor.isShutdown()) {
+						throw new RejectedExecutionException("The search executor has been shut down");
+					}
+
+					task.run();
+				});
+
+		this.currentQuery = new ThreadLocal<QueryStatistics>();
+		this.queryCount = new AtomicLong();
+		this.parallelQueryCount = new AtomicLong();
+		this.sliceCount = new AtomicLong();
+		this.totalSliceNanos = new AtomicLong();
+		this.totalWallNanos = new AtomicLong();
+	}
+
+	@Override
+	public void execute(Runnable task) {
+
+		QueryStatistics query = currentQuery.get();
+
+		// The task may run on a search thread or, if the queue is full, on this thread
+		pool.execute(() -> {
+			QueryStatistics previous = currentQuery.get();
+			currentQuery.set(query);
+
+			try {
+				task.run();
+			} finally {
+				currentQuery.set(previous);
+			}
+		});
+	}
+
+	/**
+	 * Starts measuring a query of the calling thread
+	 */
+	public void startQuery() {
+		currentQuery.set(new QueryStatistics());
+	}
+
+	/**
+	 * Records the time spent searching a slice of the current query. Slices of searches
+	 * outside a measured query (e.g. the join query or the rescoring) are not counted, as
+	 * their time would not be part of the wall time of any query
+	 * 
+	 * @param sliceNanos The time spent searching the slice
+	 */
+	public void endSlice(long sliceNanos) {
+
+		QueryStatistics query = currentQuery.get();
+
+		if (query == null) {
+			return;
+		}
+
+		sliceCount.incrementAndGet();
+		query.sliceNanos.addAndGet(sliceNanos);
+
+		if (Thread.currentThread() != query.thread) {
+			query.parallel = true;
+		}
+	}
+
+	/**
+	 * Stops measuring the query of the calling thread
+	 */
+	public void endQuery() {
+
+		QueryStatistics query = currentQuery.get();
+		currentQuery.remove();
+
+		if (query == null) {
+			return;
+		}
+
+		queryCount.incrementAndGet();
+
+		if (query.parallel) {
+			parallelQueryCount.incrementAndGet();
+		}
+
+		totalWallNanos.addAndGet(System.nanoTime() - query.start);
+		totalSliceNanos.addAndGet(query.sliceNanos.get());
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns the executor counters. The speedup is the time spent searching slices
+	 * divided by the wall time of the queries
+	 * 
+	 * @return The counters as a JSON object
+	 */
+	public JSONObject getStatistics() {
+
+		long wallNanos = totalWallNanos.get();
+
+		JSONObject statistics = new JSONObject();
+		statistics.put("threads", pool.getMaximumPoolSize());
+		statistics.put("activeThreads", pool.getActiveCount());
+		statistics.put("queuedTasks", pool.getQueue().size());
+		statistics.put("queries", queryCount.get());
+		statistics.put("parallelQueries", parallelQueryCount.get());
+		statistics.put("slices", sliceCount.get());
+		statistics.put("speedup", wallNanos > 0 ? (double) totalSliceNanos.get() / wallNanos : 1.0);
+		return statistics;
+	}
+
+	/**
+	 * The measurements of a single query
+	 */
+	private static class QueryStatistics {
+
+		private final Thread thread = Thread.currentThread();
+
+		private final long start = System.nanoTime();
+
+		private final AtomicLong sliceNanos = new AtomicLong();
+
+		private volatile boolean parallel;
+	}
+}
@@ -0,0 +1,59 @@
+package org.dbpedia.lookup.searcher;
+
+import java.util.function.BooleanSupplier;
+
+import org.apache.lucene.index.QueryTimeout;
+
+/**
+ * Stops the collection of hits once the time budget of a request is used up or the
+ * request has been cancelled, e.g. because the client has disconnected
+ */
+public class SearchTimeout implements QueryTimeout {
+
+	private final long deadline;
+
+	private final BooleanSupplier cancellation;
+
+	private volatile boolean expired;
+
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new search timeout
+	 * 
+	 * @param timeout The time budget in milliseconds or 0 for no budget
+	 * @param cancellation Returns true once the request has been cancelled, may be null
+	 */
+	public SearchTimeout(long timeout, BooleanSupplier cancellation) {
+		this.deadline = timeout > 0 ? System.nanoTime() + timeout * 1000000L : Long.MAX_VALUE;
+		this.cancellation = cancellation;
+	}
+
+	@Override
+	public boolean shouldExit() {
+
+		if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+			expired = true;
+		}
+
+		if (cancellation != null && cancellation.getAsBoolean()) {
+			cancelled = true;
+		}
+
+		return expired || cancelled;
+	}
+
+	/**
+	 * @return True if the search exceeded its time budget
+	 */
+	public boolean isExpired() {
+		return expired;
+	}
+
+	/**
+	 * @return True if the search has been cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -0,0 +1,93 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.dbpedia.lookup.Constants;
+
+/**
+ * Collects the stored field values of a single hit, grouped by field in the order the
+ * fields first occur. Can be reset and reused for the next hit. If a set of field
+ * names is passed, all other fields are skipped without being decoded. The source bindings
+ * of the indexer are always skipped
+ */
+public class StoredHitVisitor extends StoredFieldVisitor {
+
+	private final Set<String> fields;
+
+	private final LinkedHashMap<String, List<String>> fieldValues = new LinkedHashMap<String, List<String>>();
+
+	/**
+	 * Creates a new visitor
+	 * 
+	 * @param fields The fields to collect or null to collect all fields
+	 */
+	public StoredHitVisitor(Set<String> fields) {
+		this.fields = fields;
+	}
+
+	public void reset() {
+		fieldValues.clear();
+	}
+
+	/**
+	 * @return The values of each collected field, keyed by the field name
+	 */
+	public Map<String, List<String>> getFieldValues() {
+		return fieldValues;
+	}
+
+	@Override
+	public Status needsField(FieldInfo fieldInfo) throws IOException {
+
+		if (fieldInfo.name.equals(Constants.FIELD_SOURCE_BINDINGS)) {
+			return Status.NO;
+		}
+
+		if (fields != null && !fields.contains(fieldInfo.name)) {
+			return Status.NO;
+		}
+
+		return Status.YES;
+	}
+
+	@Override
+	public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
+		add(fieldInfo, null);
+	}
+
+	@Override
+	public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+		add(fieldInfo, value);
+	}
+
+	@Override
+	public void intField(FieldInfo fieldInfo, int value) throws IOException {
+		add(fieldInfo, Integer.toString(value));
+	}
+
+	@Override
+	public void longField(FieldInfo fieldInfo, long value) throws IOException {
+		add(fieldInfo, Long.toString(value));
+	}
+
+	@Override
+	public void floatField(FieldInfo fieldInfo, float value) throws IOException {
+		add(fieldInfo, Float.toString(value));
+	}
+
+	@Override
+	public void doubleField(FieldInfo fieldInfo, double value) throws IOException {
+		add(fieldInfo, Double.toString(value));
+	}
+
+	private void add(FieldInfo fieldInfo, String value) {
+		fieldValues.computeIfAbsent(fieldInfo.name, name -> new ArrayList<String>()).add(value);
+	}
+}
@@ -0,0 +1,159 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.DocIdStream;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Wraps the collectors of a single search call and stops collecting hits once the
+ * search timeout asks to exit. Unlike a timeout set on the index searcher, this lets all
+ * requests share the searcher of the searcher manager. The hits collected so far are
+ * kept. The timeout is checked while hits are collected, so the rewrite of the query
+ * (e.g. the term expansion of prefix and fuzzy queries) is not covered
+ */
+public class TimeoutCollectorManager<C extends Collector, T>
+		implements CollectorManager<TimeoutCollectorManager.TimeoutCollector<C>, T> {
+
+	private static final int CHECK_INTERVAL = 256;
+
+	private final CollectorManager<C, T> manager;
+
+	private final SearchTimeout timeout;
+
+	private TimeoutCollectorManager(CollectorManager<C, T> manager, SearchTimeout timeout) {
+		this.manager = manager;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Wraps a collector manager
+	 *
+	 * @param manager The collector manager
+	 * @param timeout The timeout of the search, may be null
+	 * @return The wrapped manager or the passed manager, if there is no timeout
+	 */
+	public static <C extends Collector, T> CollectorManager<?, T> wrap(CollectorManager<C, T> manager,
+			SearchTimeout timeout) {
+
+		if (timeout == null) {
+			return manager;
+		}
+
+		return new TimeoutCollectorManager<C, T>(manager, timeout);
+	}
+
+	@Override
+	public TimeoutCollector<C> newCollector() throws IOException {
+		return new TimeoutCollector<C>(manager.newCollector(), timeout);
+	}
+
+	@Override
+	public T reduce(Collection<TimeoutCollector<C>> collectors) throws IOException {
+
+		List<C> delegates = new ArrayList<C>(collectors.size());
+
+		for (TimeoutCollector<C> collector : collectors) {
+			delegates.add(collector.in);
+		}
+
+		return manager.reduce(delegates);
+	}
+
+	/**
+	 * Collector that skips the remaining documents of a segment and all further segments
+	 * once the timeout asks to exit
+	 */
+	public static class TimeoutCollector<C extends Collector> implements Collector {
+
+		private final C in;
+
+		private final SearchTimeout timeout;
+
+		private TimeoutCollector(C in, SearchTimeout timeout) {
+			this.in = in;
+			this.timeout = timeout;
+		}
+
+		@Override
+		public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+
+			if (timeout.shouldExit()) {
+				throw new CollectionTerminatedException();
+			}
+
+			return new TimeoutLeafCollector(in.getLeafCollector(context), timeout);
+		}
+
+		@Override
+		public ScoreMode scoreMode() {
+			return in.scoreMode();
+		}
+
+		@Override
+		public void setWeight(Weight weight) {
+			in.setWeight(weight);
+		}
+	}
+
+	private static class TimeoutLeafCollector implements LeafCollector {
+
+		private final LeafCollector in;
+
+		private final SearchTimeout timeout;
+
+		private int collected;
+
+		private TimeoutLeafCollector(LeafCollector in, SearchTimeout timeout) {
+			this.in = in;
+			this.timeout = timeout;
+		}
+
+		@Override
+		public void setScorer(Scorable scorer) throws IOException {
+			in.setScorer(scorer);
+		}
+
+		@Override
+		public void collect(int doc) throws IOException {
+
+			// Reading the clock for every hit would slow down large result sets
+			if (++collected % CHECK_INTERVAL == 0 && timeout.shouldExit()) {
+				throw new CollectionTerminatedException();
+			}
+
+			in.collect(doc);
+		}
+
+		@Override
+		public void collect(DocIdStream stream) throws IOException {
+
+			if (timeout.shouldExit()) {
+				throw new CollectionTerminatedException();
+			}
+
+			in.collect(stream);
+		}
+
+		@Override
+		public DocIdSetIterator competitiveIterator() throws IOException {
+			return in.competitiveIterator();
+		}
+
+		@Override
+		public void finish() throws IOException {
+			in.finish();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.dbpedia.lookup.searcher;
+
+import java.io.IOException;
+
+import org.dbpedia.lookup.Constants;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Streams search results as SAX events into a content handler, e.g. an XSLT transformer
+ * handler. Creates one "result" element per document inside a "results" root element
+ * and one element per field value
+ */
+public class XmlResultWriter implements ResultWriter {
+
+	private static final String ELEMENT_RESULTS = "results";
+
+	private static final String ELEMENT_SCORE = "score";
+
+	private static final String NULL_VALUE = "null";
+
+	private static final AttributesImpl NO_ATTRIBUTES = new AttributesImpl();
+
+	private final ContentHandler handler;
+
+	private String fieldName;
+
+	public XmlResultWriter(ContentHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public boolean usesHighlights() {
+		return false;
+	}
+
+	@Override
+	public void startResults(boolean partial) throws IOException {
+		try {
+			handler.startDocument();
+
+			if (partial) {
+				AttributesImpl attributes = new AttributesImpl();
+				attributes.addAttribute("", Constants.FIELD_PARTIAL, Constants.FIELD_PARTIAL, "CDATA", "true");
+				handler.startElement("", ELEMENT_RESULTS, ELEMENT_RESULTS, attributes);
+			} else {
+				handler.startElement("", ELEMENT_RESULTS, ELEMENT_RESULTS, NO_ATTRIBUTES);
+			}
+		} catch (SAXException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void startDocument() throws IOException {
+		try {
+			handler.startElement("", Constants.FIELD_RESULT, Constants.FIELD_RESULT, NO_ATTRIBUTES);
+		} catch (SAXException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void startField(String name) throws IOException {
+		fieldName = name;
+	}
+
+	@Override
+	public void writeValue(String value, String highlight) throws IOException {
+		writeElement(fieldName, value != null ? value : NULL_VALUE);
+	}
+
+	@Override
+	public void endField() throws IOException {
+		fieldName = null;
+	}
+
+	@Override
+	public void writeScore(float score) throws IOException {
+		writeElement(ELEMENT_SCORE, "" + score);
+	}
+
+	@Override
+	public void endDocument() throws IOException {
+		try {
+			handler.endElement("", Constants.FIELD_RESULT, Constants.FIELD_RESULT);
+		} catch (SAXException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void endResults() throws IOException {
+		try {
+			handler.endElement("", ELEMENT_RESULTS, ELEMENT_RESULTS);
+			handler.endDocument();
+		} catch (SAXException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private void writeElement(String name, String value) throws IOException {
+		try {
+			handler.startElement("", name, name, NO_ATTRIBUTES);
+			handler.characters(value.toCharArray(), 0, value.length());
+			handler.endElement("", name, name);
+		} catch (SAXException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+}
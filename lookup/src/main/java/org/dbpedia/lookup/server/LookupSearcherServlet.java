@@ -1,26 +1,26 @@
 package org.dbpedia.lookup.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.Hashtable;
+import java.util.function.BooleanSupplier;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Templates;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -30,9 +30,15 @@ import org.dbpedia.lookup.RequestUtils;
 import org.dbpedia.lookup.config.LookupConfig;
 import org.dbpedia.lookup.config.LookupField;
 import org.dbpedia.lookup.config.QuerySettings;
+import org.dbpedia.lookup.searcher.JsonResultWriter;
 import org.dbpedia.lookup.searcher.LookupSearcher;
+import org.dbpedia.lookup.searcher.QueryKey;
+import org.dbpedia.lookup.searcher.ResultWriter;
+import org.dbpedia.lookup.searcher.ResultWriterFactory;
+import org.dbpedia.lookup.searcher.XmlResultWriter;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Request;
 import org.json.JSONObject;
-import org.json.XML;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,6 +58,8 @@ public class LookupSearcherServlet extends HttpServlet {
 
 	public static final String PATH_REFRESH = "/refresh";
 
+	public static final String PATH_STATISTICS = "/statistics";
+
 	public static final String QUERY_SUFFIX_WEIGHT = "Weight";
 
 	public static final String QUERY_SUFFIX_REQUIRED = "Required";
@@ -64,11 +72,17 @@ public class LookupSearcherServlet extends HttpServlet {
 
 	public static final String QUERY_SUFFIX_ALLOW_PARTIAL_MATCH = "AllowPartialMatch";
 
+	public static final String QUERY_SUFFIX_FILTER = "Filter";
+
 	private LookupSearcher searcher;
 
 	private LookupConfig queryConfig;
 
-	private Transformer xformer;
+	private SAXTransformerFactory transformerFactory;
+
+	private Templates formatTemplate;
+
+	private SearchRequestCoalescer coalescer;
 
 	public static final String CONFIG_PATH = "configpath";
 
@@ -95,17 +109,25 @@ public class LookupSearcherServlet extends HttpServlet {
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
+			// Requests report the error instead of failing on the missing config
+			initializationError = "Unable to load the config " + configPath + ": " + e.getMessage();
+			return;
+		}
+
+		if (queryConfig.isCoalesceRequests()) {
+			// Waiting requests fall back to their own search once the running one exceeds its time budget
+			coalescer = new SearchRequestCoalescer(2L * queryConfig.getQueryTimeout());
 		}
 		
-		TransformerFactory transformerFactory = new net.sf.saxon.TransformerFactoryImpl();
+		// Templates are compiled once and are thread-safe, each request creates its own
+		// transformer handler from them
+		transformerFactory = new net.sf.saxon.TransformerFactoryImpl();
 
 		if (queryConfig.getFormatTemplate() != null) {
 
 			try {
-				Templates formatTemplate = transformerFactory.newTemplates(new StreamSource(
+				formatTemplate = transformerFactory.newTemplates(new StreamSource(
 						new FileInputStream(queryConfig.getFormatTemplate())));
-
-				xformer = formatTemplate.newTransformer();
 			} catch (TransformerConfigurationException | FileNotFoundException e1) {
 				// this is logged to catalina.out
 				e1.printStackTrace();
@@ -115,6 +137,25 @@ public class LookupSearcherServlet extends HttpServlet {
 
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+
+		if(PATH_STATISTICS.equals(req.getPathInfo())) {
+			resp.setCharacterEncoding("UTF-8");
+			resp.setContentType("application/json");
+			PrintWriter out = resp.getWriter();
+			JSONObject statistics = searcher.getStatistics();
+
+			if (coalescer != null) {
+				JSONObject coalescerStatistics = new JSONObject();
+				coalescerStatistics.put("computed", coalescer.getComputedCount());
+				coalescerStatistics.put("coalesced", coalescer.getCoalescedCount());
+				statistics.put("coalescer", coalescerStatistics);
+			}
+
+			out.println(statistics.toString());
+			out.close();
+			return;
+		}
+
 		doPostOrGet(req, resp);
 	}
 
@@ -153,49 +194,102 @@ public class LookupSearcherServlet extends HttpServlet {
 		Hashtable<LookupField, String> queryMap = createQueryMap(req, query);
 
 		logger.info("Search; " + req.getQueryString() + "; " + Time.currentWallTime() + ";");
-		JSONObject result = searcher.search(settings, queryMap, join);
 
-		if(result == null) {
-			throw new ServletException("The index has not been created yet.");
+		boolean isXml = settings.getFormat().equalsIgnoreCase(LookupConfig.CONFIG_FIELD_FORMAT_XML);
+		ResultWriterFactory writerFactory;
+
+		if (isXml) {
+			writerFactory = out -> createXmlWriter(out);
+		} else {
+			writerFactory = out -> new JsonResultWriter(out, settings.getFormat());
 		}
 
-		if (settings.getFormat().equalsIgnoreCase(LookupConfig.CONFIG_FIELD_FORMAT_XML)) {
+		resp.setCharacterEncoding("UTF-8");
+		resp.setContentType(isXml ? "application/xml" : "application/json");
 
-			resp.setCharacterEncoding("UTF-8");
-			resp.setContentType("application/xml");
-			PrintWriter out = resp.getWriter();
+		OutputStream out = resp.getOutputStream();
 
-			try {
-				out.print(formatXml(result));
-				out.close();
-			} catch (TransformerException e) {
-				throw new IOException(e.getMessage());
-			}
+		if (coalescer != null) {
+			// Coalesced searches are shared with other requests and are not cancelled
+			byte[] response = coalescer.execute(QueryKey.create(queryMap, settings, join), () -> {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				search(settings, queryMap, join, buffer, writerFactory, null);
+				return buffer.toByteArray();
+			});
+
+			out.write(response);
 		} else {
-			resp.setCharacterEncoding("UTF-8");
-			resp.setContentType("application/json");
-			PrintWriter out = resp.getWriter();
-			out.println(result.toString());
-			out.close();
+			search(settings, queryMap, join, out, writerFactory, createCancellation(req));
 		}
 
+		out.close();
 	}
 
-	private String formatXml(JSONObject result) throws TransformerException {
+	/**
+	 * Runs the search and streams the result to the output stream
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	private void search(QuerySettings settings, Hashtable<LookupField, String> queryMap, String join,
+			OutputStream out, ResultWriterFactory writerFactory, BooleanSupplier cancellation)
+			throws ServletException, IOException {
+
+		if(!searcher.search(settings, queryMap, join, out, writerFactory, cancellation)) {
+			throw new ServletException("The index has not been created yet.");
+		}
+	}
 
-		String generatedXml = "<results>" + XML.toString(result) + "</results>";
+	/**
+	 * Creates a check that tells the searcher to stop once the connection of the client
+	 * has been closed
+	 * 
+	 * @param req
+	 * @return The cancellation check or null, if searches are not cancelled
+	 */
+	private BooleanSupplier createCancellation(HttpServletRequest req) {
 
-		if (xformer == null) {
-			return generatedXml;
+		if (!queryConfig.isCancelOnDisconnect()) {
+			return null;
 		}
 
-		StringWriter writer = new StringWriter();
+		Request baseRequest = Request.getBaseRequest(req);
 
-		Source source = new StreamSource(new java.io.StringReader(generatedXml));
-		Result target = new StreamResult(writer);
-		xformer.transform(source, target);
+		if (baseRequest == null) {
+			return null;
+		}
 
-		return writer.toString();
+		EndPoint endPoint = baseRequest.getHttpChannel().getEndPoint();
+		return () -> !endPoint.isOpen();
+	}
+
+	/**
+	 * Creates a result writer that streams the results as SAX events into the
+	 * XSLT format template or, if no template is configured, directly into an XML
+	 * serializer
+	 * 
+	 * @param out
+	 * @return
+	 * @throws IOException
+	 */
+	private ResultWriter createXmlWriter(OutputStream out) throws IOException {
+
+		try {
+			TransformerHandler handler;
+
+			if (formatTemplate != null) {
+				handler = transformerFactory.newTransformerHandler(formatTemplate);
+			} else {
+				handler = transformerFactory.newTransformerHandler();
+				handler.getTransformer().setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			}
+
+			handler.setResult(new StreamResult(out));
+			return new XmlResultWriter(handler);
+
+		} catch (TransformerConfigurationException e) {
+			throw new IOException(e.getMessage(), e);
+		}
 	}
 
 	/**
@@ -247,6 +341,12 @@ public class LookupSearcherServlet extends HttpServlet {
 				queryField.setAllowPartialMatch(Boolean.parseBoolean(fieldAllowPartialMatch));
 			}
 
+			String fieldFilter = req.getParameter(queryField.getName() + QUERY_SUFFIX_FILTER);
+
+			if (fieldFilter != null) {
+				queryField.setFilter(Boolean.parseBoolean(fieldFilter));
+			}
+
 			String fieldWeight = req.getParameter(queryField.getName() + QUERY_SUFFIX_WEIGHT);
 
 			if (fieldWeight != null) {
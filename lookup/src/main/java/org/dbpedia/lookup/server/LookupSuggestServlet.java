@@ -0,0 +1,85 @@
+package org.dbpedia.lookup.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.dbpedia.lookup.Constants;
+import org.dbpedia.lookup.Main;
+import org.dbpedia.lookup.RequestUtils;
+import org.dbpedia.lookup.config.LookupConfig;
+import org.dbpedia.lookup.config.QuerySettings;
+import org.dbpedia.lookup.searcher.JsonResultWriter;
+import org.dbpedia.lookup.searcher.LookupSearcher;
+
+/**
+ * HTTP Servlet with the handler for the type-ahead request "/api/suggest".
+ * Returns the most popular completions of the passed prefix from the completion
+ * field the indexer writes for the suggest fields. Responds with 404, if the index
+ * has no completions
+ */
+public class LookupSuggestServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] PARAM_QUERY = { "QueryString", "query", "prefix" };
+
+	private static final String PARAM_FUZZY = "fuzzy";
+
+	private static final int DEFAULT_MAX_RESULTS = 10;
+
+	private LookupSearcher searcher;
+
+	private LookupConfig queryConfig;
+
+	@Override
+	public void init() throws ServletException {
+
+		searcher = (LookupSearcher)getServletContext().getAttribute("SEARCHER");
+
+		try {
+			queryConfig = LookupConfig.Load(getInitParameter(Main.CONFIG_PATH));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+
+		String prefix = RequestUtils.getStringParameter(req, PARAM_QUERY, null);
+
+		if (prefix == null) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing query parameter.");
+			return;
+		}
+
+		int maxResults = RequestUtils.getIntParameter(req, QuerySettings.MAX_RESULTS, DEFAULT_MAX_RESULTS);
+
+		if (queryConfig != null && queryConfig.getMaxResultsCap() > 0) {
+			maxResults = Math.min(maxResults, queryConfig.getMaxResultsCap());
+		}
+
+		maxResults = Math.max(maxResults, 1);
+
+		boolean fuzzy = Boolean.parseBoolean(RequestUtils.getStringParameter(req, PARAM_FUZZY, "false"));
+
+		resp.setCharacterEncoding("UTF-8");
+		resp.setContentType("application/json");
+
+		OutputStream out = resp.getOutputStream();
+
+		if (!searcher.suggest(prefix, maxResults, fuzzy,
+				new JsonResultWriter(out, Constants.CONFIG_FIELD_FORMAT_JSON_RAW))) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND,
+					"The index has no suggester. Set the suggestFields of the configuration to enable it.");
+			return;
+		}
+
+		out.close();
+	}
+}
@@ -0,0 +1,131 @@
+package org.dbpedia.lookup.server;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.ServletException;
+
+/**
+ * Coalesces identical concurrent search requests. The first request with a given key
+ * computes the serialized response, all requests with the same key arriving while the
+ * computation is running wait for it and receive the same response. Waiting requests
+ * give up after a timeout and run the computation themselves.
+ */
+public class SearchRequestCoalescer {
+
+	/**
+	 * Computes a serialized search response
+	 */
+	public interface ResponseComputation {
+		byte[] compute() throws ServletException, IOException;
+	}
+
+	public static final long DEFAULT_WAIT_TIMEOUT = 30000;
+
+	private final long waitTimeout;
+
+	private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight;
+
+	private final AtomicLong computedCount;
+
+	private final AtomicLong coalescedCount;
+
+	/**
+	 * Creates a new coalescer
+	 *
+	 * @param waitTimeout The maximum time in milliseconds a request waits for an identical
+	 * running request
+	 */
+	public SearchRequestCoalescer(long waitTimeout) {
+		this.waitTimeout = waitTimeout > 0 ? waitTimeout : DEFAULT_WAIT_TIMEOUT;
+		this.inFlight = new ConcurrentHashMap<String, CompletableFuture<byte[]>>();
+		this.computedCount = new AtomicLong();
+		this.coalescedCount = new AtomicLong();
+	}
+
+	/**
+	 * Returns the response for the given key. Runs the computation, if no identical
+	 * request is in flight, otherwise waits for the running computation
+	 *
+	 * @param key The normalized search key
+	 * @param computation The computation of the serialized response
+	 * @return The serialized response
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	public byte[] execute(String key, ResponseComputation computation) throws ServletException, IOException {
+
+		CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, future);
+
+		if (running != null) {
+
+			byte[] response = await(running);
+
+			if (response != null) {
+				coalescedCount.incrementAndGet();
+				return response;
+			}
+
+			// The running request takes too long, compute the response without coalescing
+			computedCount.incrementAndGet();
+			return computation.compute();
+		}
+
+		computedCount.incrementAndGet();
+
+		try {
+			byte[] response = computation.compute();
+			future.complete(response);
+			return response;
+		} catch (Throwable e) {
+			// Errors have to reach the waiting requests as well, they would wait forever otherwise
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	public long getComputedCount() {
+		return computedCount.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * Waits for a running computation
+	 *
+	 * @return The response or null, if the computation did not finish within the wait timeout
+	 */
+	private byte[] await(CompletableFuture<byte[]> running) throws ServletException, IOException {
+
+		try {
+			return running.get(waitTimeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServletException("Interrupted while waiting for an identical search request", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof ServletException) {
+				throw (ServletException) cause;
+			}
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+
+			throw new ServletException(cause);
+		}
+	}
+}
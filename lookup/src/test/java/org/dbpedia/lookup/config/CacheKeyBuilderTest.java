@@ -0,0 +1,37 @@
+package org.dbpedia.lookup.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CacheKeyBuilderTest {
+
+	@Test
+	public void separatorsInValuesDoNotForgeKeys() {
+
+		String split = new CacheKeyBuilder().add("query", "a").add("join", "b").toString();
+		String joined = new CacheKeyBuilder().add("query", "a;join=1:b").toString();
+
+		assertNotEquals(split, joined);
+	}
+
+	@Test
+	public void nullDiffersFromNullString() {
+		assertNotEquals(new CacheKeyBuilder().add("join", null).toString(),
+				new CacheKeyBuilder().add("join", "null").toString());
+	}
+
+	@Test
+	public void setsAreKeyedByTheirElements() {
+
+		String twoFields = new CacheKeyBuilder().addAll("fields", Arrays.asList("a", "b")).toString();
+		String oneField = new CacheKeyBuilder().addAll("fields", Arrays.asList("a, b")).toString();
+		String reordered = new CacheKeyBuilder().addAll("fields", Arrays.asList("b", "a")).toString();
+
+		assertNotEquals(twoFields, oneField);
+		assertEquals(twoFields, reordered);
+	}
+}
@@ -0,0 +1,112 @@
+package org.dbpedia.lookup.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DocumentPipelineTest {
+
+	private static final int QUEUE_SIZE = 4;
+
+	@Test
+	public void writesEveryDocumentOnce() throws IOException {
+
+		List<String> written = Collections.synchronizedList(new ArrayList<String>());
+		DocumentPipeline pipeline = new DocumentPipeline(3, QUEUE_SIZE,
+				() -> (documentId, bindings) -> written.add(documentId + "=" + bindings.get(0).getValue()));
+
+		Set<String> expected = new HashSet<String>();
+
+		for (int i = 0; i < 100; i++) {
+			accept(pipeline, "d" + i, "v" + i);
+			expected.add("d" + i + "=v" + i);
+		}
+
+		pipeline.finish();
+
+		assertEquals(100, written.size());
+		assertEquals(expected, new HashSet<String>(written));
+	}
+
+	@Test
+	public void finishReportsTheFailureOfAWorker() throws IOException {
+
+		DocumentPipeline pipeline = new DocumentPipeline(2, QUEUE_SIZE, () -> (documentId, bindings) -> {
+			if (documentId.equals("d9")) {
+				throw new IOException("Write failed");
+			}
+		});
+
+		// The last document fails, so only finish can report the failure
+		for (int i = 0; i < 10; i++) {
+			accept(pipeline, "d" + i, "v" + i);
+		}
+
+		assertFinishFails(pipeline, "Write failed");
+
+		// Further calls report the failure again
+		assertFinishFails(pipeline, "Write failed");
+	}
+
+	@Test
+	public void acceptReportsTheFailureOfAWorker() throws IOException {
+
+		IllegalStateException failure = new IllegalStateException("Broken document");
+		DocumentPipeline pipeline = new DocumentPipeline(1, QUEUE_SIZE, () -> (documentId, bindings) -> {
+			throw failure;
+		});
+
+		long deadline = System.currentTimeMillis() + 10000;
+
+		// The worker fails asynchronously, so a later document sees the failure
+		try {
+			for (int i = 0; System.currentTimeMillis() < deadline; i++) {
+				accept(pipeline, "d" + i, "v" + i);
+				Thread.sleep(1);
+			}
+
+			fail("The failure of the worker is not reported");
+
+		} catch (IOException e) {
+			assertEquals("Index worker failed", e.getMessage());
+			assertSame(failure, e.getCause());
+		} catch (InterruptedException e) {
+			fail();
+		}
+
+		try {
+			pipeline.finish();
+			fail();
+		} catch (IOException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	private static void accept(DocumentPipeline pipeline, String documentId, String value) throws IOException {
+
+		List<StagingStore.Binding> bindings = new ArrayList<StagingStore.Binding>();
+		bindings.add(new StagingStore.Binding(documentId, "label", "text", value));
+		pipeline.accept(documentId, bindings);
+	}
+
+	private static void assertFinishFails(DocumentPipeline pipeline, String message) {
+
+		try {
+			pipeline.finish();
+			fail();
+		} catch (IOException e) {
+			assertEquals(message, e.getMessage());
+			assertTrue(e.getCause() == null);
+		}
+	}
+}
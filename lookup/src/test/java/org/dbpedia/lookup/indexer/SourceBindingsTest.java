@@ -0,0 +1,74 @@
+package org.dbpedia.lookup.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+public class SourceBindingsTest {
+
+	private static final String DOCUMENT_ID = "http://dbpedia.org/resource/Zürich";
+
+	@Test
+	public void decodesTheEncodedBindings() throws IOException {
+
+		List<StagingStore.Binding> bindings = Arrays.asList(
+				new StagingStore.Binding(DOCUMENT_ID, "label", "text", "Zürich"),
+				new StagingStore.Binding(DOCUMENT_ID, "label", "text", "苏黎世 🇨🇭"),
+				new StagingStore.Binding(DOCUMENT_ID, "comment", "text", null),
+				new StagingStore.Binding(DOCUMENT_ID, "refCount", "numeric", "4711"),
+				new StagingStore.Binding(DOCUMENT_ID, "comment", "text", ""));
+
+		List<StagingStore.Binding> decoded = SourceBindings.decode(DOCUMENT_ID,
+				new BytesRef(SourceBindings.encode(bindings)));
+
+		assertEquals(bindings.size(), decoded.size());
+
+		for (int i = 0; i < bindings.size(); i++) {
+			assertEquals(DOCUMENT_ID, decoded.get(i).getDocumentId());
+			assertEquals(bindings.get(i).getField(), decoded.get(i).getField());
+			assertEquals(bindings.get(i).getFieldType(), decoded.get(i).getFieldType());
+			assertEquals(bindings.get(i).getValue(), decoded.get(i).getValue());
+		}
+
+		assertNull(decoded.get(2).getValue());
+	}
+
+	@Test
+	public void decodesBindingsAtAnOffset() throws IOException {
+
+		byte[] encoded = SourceBindings.encode(
+				Collections.singletonList(new StagingStore.Binding(DOCUMENT_ID, "label", "text", "Zürich")));
+
+		// Stored field values may be a slice of a larger buffer
+		byte[] buffer = new byte[encoded.length + 5];
+		System.arraycopy(encoded, 0, buffer, 3, encoded.length);
+
+		List<StagingStore.Binding> decoded = SourceBindings.decode(DOCUMENT_ID,
+				new BytesRef(buffer, 3, encoded.length));
+
+		assertEquals(1, decoded.size());
+		assertEquals("Zürich", decoded.get(0).getValue());
+	}
+
+	@Test
+	public void rejectsAnUnknownVersion() {
+
+		byte[] encoded = SourceBindings.encode(Collections.<StagingStore.Binding>emptyList());
+		encoded[0] = 99;
+
+		try {
+			SourceBindings.decode(DOCUMENT_ID, new BytesRef(encoded));
+			fail();
+		} catch (IOException e) {
+			assertEquals("Unknown source bindings version 99", e.getMessage());
+		}
+	}
+}
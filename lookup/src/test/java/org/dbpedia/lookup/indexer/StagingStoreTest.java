@@ -0,0 +1,132 @@
+package org.dbpedia.lookup.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingStoreTest {
+
+	// Each binding below takes 90 bytes, so every second binding spills a run
+	private static final long TWO_BINDINGS = 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void mergesRunsInDocumentOrder() throws IOException {
+
+		StagingStore store = new StagingStore(folder.newFolder(), TWO_BINDINGS);
+
+		add(store, "d3", "v1");
+		add(store, "d1", "v2");
+		add(store, "d2", "v3");
+		add(store, "d1", "v4");
+		add(store, "d3", "v5");
+
+		assertEquals(2, store.getRunCount());
+		assertEquals(Arrays.asList("d1=v2,v4", "d2=v3", "d3=v1,v5"), merge(store));
+		assertEquals(0, store.getStagedBindings());
+		assertEquals(0, store.getRunCount());
+	}
+
+	@Test
+	public void keepsStagingOrderOfADocumentAcrossRuns() throws IOException {
+
+		StagingStore store = new StagingStore(folder.newFolder(), TWO_BINDINGS);
+
+		// The values of d1 end up in both runs and in memory
+		add(store, "d1", "v1");
+		add(store, "d2", "v2");
+		add(store, "d1", "v3");
+		add(store, "d1", "v4");
+		add(store, "d1", "v5");
+
+		assertEquals(2, store.getRunCount());
+		assertEquals(Arrays.asList("d1=v1,v3,v4,v5", "d2=v2"), merge(store));
+	}
+
+	@Test
+	public void failedMergeKeepsTheBindings() throws IOException {
+
+		StagingStore store = new StagingStore(folder.newFolder(), TWO_BINDINGS);
+
+		add(store, "d1", "v1");
+		add(store, "d2", "v2");
+		add(store, "d3", "v3");
+
+		try {
+			store.merge((documentId, bindings) -> {
+				if (documentId.equals("d2")) {
+					throw new IOException("Write failed");
+				}
+			});
+			fail();
+		} catch (IOException e) {
+			assertEquals("Write failed", e.getMessage());
+		}
+
+		assertEquals(3, store.getStagedBindings());
+		assertEquals(Arrays.asList("d1=v1", "d2=v2", "d3=v3"), merge(store));
+	}
+
+	@Test
+	public void failedFinishKeepsTheBindings() throws IOException {
+
+		StagingStore store = new StagingStore(folder.newFolder(), TWO_BINDINGS);
+
+		add(store, "d1", "v1");
+
+		try {
+			store.merge(new StagingStore.DocumentConsumer() {
+
+				@Override
+				public void accept(String documentId, List<StagingStore.Binding> bindings) {
+				}
+
+				@Override
+				public void finish() throws IOException {
+					throw new IOException("Finish failed");
+				}
+			});
+			fail();
+		} catch (IOException e) {
+			assertTrue(store.getStagedBindings() > 0);
+		}
+
+		assertEquals(Arrays.asList("d1=v1"), merge(store));
+	}
+
+	private static void add(StagingStore store, String documentId, String value) throws IOException {
+		store.add(new StagingStore.Binding(documentId, "label", "text", value));
+	}
+
+	/**
+	 * Merges the store and returns each document as "id=value,value"
+	 */
+	private static List<String> merge(StagingStore store) throws IOException {
+
+		List<String> documents = new ArrayList<String>();
+
+		store.merge((documentId, bindings) -> {
+
+			List<String> values = new ArrayList<String>();
+
+			for (StagingStore.Binding binding : bindings) {
+				values.add(binding.getValue());
+			}
+
+			documents.add(documentId + "=" + String.join(",", values));
+		});
+
+		return documents;
+	}
+}
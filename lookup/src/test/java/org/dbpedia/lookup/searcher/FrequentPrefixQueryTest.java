@@ -0,0 +1,67 @@
+package org.dbpedia.lookup.searcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.Test;
+
+public class FrequentPrefixQueryTest {
+
+	private static final String FIELD = "label";
+
+	@Test
+	public void expandsToTheMostFrequentTerms() throws IOException {
+
+		try (Directory directory = new ByteBuffersDirectory()) {
+
+			try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+
+				// The frequent term sorts after all rare terms with the same prefix
+				add(writer, "berg", 1);
+				add(writer, "bergen", 1);
+				add(writer, "berlin", 5);
+				add(writer, "bern", 1);
+				add(writer, "berthold", 3);
+			}
+
+			try (DirectoryReader reader = DirectoryReader.open(directory)) {
+
+				IndexSearcher searcher = new IndexSearcher(reader);
+				Set<Term> terms = new HashSet<Term>();
+
+				searcher.rewrite(new FrequentPrefixQuery(new Term(FIELD, "ber"), 2))
+						.visit(QueryVisitor.termCollector(terms));
+
+				assertEquals(2, terms.size());
+				assertTrue(terms.contains(new Term(FIELD, "berlin")));
+				assertTrue(terms.contains(new Term(FIELD, "berthold")));
+				assertEquals(8, searcher.count(new FrequentPrefixQuery(new Term(FIELD, "ber"), 2)));
+			}
+		}
+	}
+
+	private static void add(IndexWriter writer, String value, int documentCount) throws IOException {
+
+		for (int i = 0; i < documentCount; i++) {
+			Document document = new Document();
+			document.add(new StringField(FIELD, value, Field.Store.NO));
+			writer.addDocument(document);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package org.dbpedia.lookup.searcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+	@Test
+	public void newerGenerationMissesTheCachedResults() {
+
+		QueryResultCache<String> cache = new QueryResultCache<String>(10);
+
+		cache.put("berlin", 1, "result-1");
+		assertEquals("result-1", cache.get("berlin", 1));
+
+		// A refreshed reader drops all results of the previous generation
+		assertNull(cache.get("berlin", 2));
+
+		cache.put("berlin", 2, "result-2");
+		assertEquals("result-2", cache.get("berlin", 2));
+
+		JSONObject statistics = cache.getStatistics();
+		assertEquals(2, statistics.getLong("hits"));
+		assertEquals(1, statistics.getLong("misses"));
+		assertEquals(1, statistics.getLong("invalidations"));
+		assertEquals(2, statistics.getLong("generation"));
+	}
+
+	@Test
+	public void ignoresResultsOfAnOutdatedReader() {
+
+		QueryResultCache<String> cache = new QueryResultCache<String>(10);
+
+		assertNull(cache.get("berlin", 2));
+
+		// A search that started before the refresh finishes after it
+		cache.put("berlin", 1, "result-1");
+
+		assertNull(cache.get("berlin", 2));
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedResult() {
+
+		QueryResultCache<String> cache = new QueryResultCache<String>(2);
+
+		cache.put("berlin", 1, "result-berlin");
+		cache.put("bern", 1, "result-bern");
+		cache.get("berlin", 1);
+		cache.put("bergen", 1, "result-bergen");
+
+		assertEquals("result-berlin", cache.get("berlin", 1));
+		assertNull(cache.get("bern", 1));
+		assertEquals("result-bergen", cache.get("bergen", 1));
+		assertEquals(1, cache.getStatistics().getLong("evictions"));
+	}
+}
@@ -0,0 +1,161 @@
+package org.dbpedia.lookup.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SearchRequestCoalescerTest {
+
+	private static final String KEY = "query=6:berlin;";
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	private final CountDownLatch leaderStarted = new CountDownLatch(1);
+
+	private final CountDownLatch releaseLeader = new CountDownLatch(1);
+
+	@After
+	public void shutdown() {
+		releaseLeader.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void waitersReceiveTheResponseOfTheLeader() throws Exception {
+
+		SearchRequestCoalescer coalescer = new SearchRequestCoalescer(10000);
+		byte[] response = bytes("leader");
+
+		Future<byte[]> leader = startLeader(coalescer, () -> response);
+		Future<byte[]> firstWaiter = startWaiter(coalescer, () -> bytes("first"));
+		Future<byte[]> secondWaiter = startWaiter(coalescer, () -> bytes("second"));
+
+		releaseLeader.countDown();
+
+		assertSame(response, leader.get(10, TimeUnit.SECONDS));
+		assertSame(response, firstWaiter.get(10, TimeUnit.SECONDS));
+		assertSame(response, secondWaiter.get(10, TimeUnit.SECONDS));
+		assertEquals(1, coalescer.getComputedCount());
+		assertEquals(2, coalescer.getCoalescedCount());
+	}
+
+	@Test
+	public void waitersReceiveTheFailureOfTheLeader() throws Exception {
+
+		SearchRequestCoalescer coalescer = new SearchRequestCoalescer(10000);
+
+		Future<byte[]> leader = startLeader(coalescer, () -> {
+			throw new IOException("Search failed");
+		});
+		Future<byte[]> waiter = startWaiter(coalescer, () -> bytes("waiter"));
+
+		releaseLeader.countDown();
+
+		assertFailure(leader, "Search failed");
+		assertFailure(waiter, "Search failed");
+		assertEquals(0, coalescer.getCoalescedCount());
+	}
+
+	@Test
+	public void waiterComputesItsOwnResponseAfterTheTimeout() throws Exception {
+
+		SearchRequestCoalescer coalescer = new SearchRequestCoalescer(50);
+
+		Future<byte[]> leader = startLeader(coalescer, () -> bytes("leader"));
+
+		// The leader is still blocked when the wait times out
+		byte[] response = coalescer.execute(KEY, () -> bytes("waiter"));
+
+		assertArrayEquals(bytes("waiter"), response);
+		assertEquals(2, coalescer.getComputedCount());
+		assertEquals(0, coalescer.getCoalescedCount());
+
+		releaseLeader.countDown();
+		assertArrayEquals(bytes("leader"), leader.get(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Starts a request whose computation blocks until the leader is released
+	 */
+	private Future<byte[]> startLeader(SearchRequestCoalescer coalescer,
+			SearchRequestCoalescer.ResponseComputation computation) throws InterruptedException {
+
+		Future<byte[]> leader = executor.submit(() -> coalescer.execute(KEY, () -> {
+			leaderStarted.countDown();
+			awaitRelease();
+			return computation.compute();
+		}));
+
+		assertTrue(leaderStarted.await(10, TimeUnit.SECONDS));
+		return leader;
+	}
+
+	/**
+	 * Starts a request with the key of the leader and returns once it waits for the leader
+	 */
+	private Future<byte[]> startWaiter(SearchRequestCoalescer coalescer,
+			SearchRequestCoalescer.ResponseComputation computation) throws InterruptedException {
+
+		Thread[] waiterThread = new Thread[1];
+		CountDownLatch started = new CountDownLatch(1);
+
+		Future<byte[]> waiter = executor.submit(() -> {
+			waiterThread[0] = Thread.currentThread();
+			started.countDown();
+			return coalescer.execute(KEY, computation);
+		});
+
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		long deadline = System.currentTimeMillis() + 10000;
+
+		while (waiterThread[0].getState() != Thread.State.TIMED_WAITING) {
+
+			if (System.currentTimeMillis() > deadline) {
+				fail("The waiter does not wait for the leader");
+			}
+
+			Thread.sleep(1);
+		}
+
+		return waiter;
+	}
+
+	private void awaitRelease() throws IOException {
+
+		try {
+			releaseLeader.await();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private static void assertFailure(Future<byte[]> request, String message) throws Exception {
+
+		try {
+			request.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+			assertEquals(message, e.getCause().getMessage());
+		}
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}